@@ -6,9 +6,19 @@ package com.didalgo.intellij.chatgpt;
 
 import com.didalgo.intellij.chatgpt.chat.ChatMessageEvent;
 import com.didalgo.intellij.chatgpt.chat.ChatMessageListener;
+import com.didalgo.intellij.chatgpt.chat.ChatResponseAccumulator;
 import com.didalgo.intellij.chatgpt.chat.ConversationContext;
+import com.didalgo.intellij.chatgpt.chat.ResponseDelta;
+import com.didalgo.intellij.chatgpt.chat.ResponseLengthHistory;
+import com.didalgo.intellij.chatgpt.core.RequestScheduler;
+import com.didalgo.intellij.chatgpt.core.ResponseCache;
+import com.didalgo.intellij.chatgpt.core.TokenCountCache;
+import com.didalgo.intellij.chatgpt.settings.OpenAISettingsState;
+import com.didalgo.intellij.chatgpt.spi.ChatCompletionDelta;
+import com.didalgo.intellij.chatgpt.spi.StreamingOpenAiService;
 import com.intellij.openapi.diagnostic.Logger;
 import com.theokanning.openai.completion.chat.*;
+import com.theokanning.openai.service.OpenAiService;
 import io.reactivex.Flowable;
 import io.reactivex.functions.Action;
 import io.reactivex.functions.Consumer;
@@ -18,6 +28,8 @@ import org.reactivestreams.Subscription;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class ChatGptHandler {
 
@@ -93,16 +105,25 @@ public class ChatGptHandler {
         var openAiService = OpenAIServiceHolder.getOpenAiService(ctx.getModelPage());
         var flowHandler = new ChatCompletionHandler(listener);
         var request = event.getRequest().orElseThrow(() -> new IllegalArgumentException("ChatCompletionRequest is required"));
+        var settings = OpenAISettingsState.getInstance();
+        var retryPolicy = settings.getRetryPolicy();
+        var endpointUrl = settings.getConfigurationPage(ctx.getModelPage()).getApiEndpointUrl();
+        var requestScheduler = RequestScheduler.getInstance();
+        int tokenCount = countRequestTokens(ctx, request);
+        var responseCacheKey = getResponseCacheKey(settings, endpointUrl, request);
+        flowHandler.setResponseCacheKey(responseCacheKey);
 
         if (Boolean.TRUE.equals(request.getStream())) {
-            return openAiService.streamChatCompletion(request)
-            //return streamTestChatCompletion(TEST_MARKDOWN)
+            Supplier<Flowable<List<ChatCompletionDelta>>> source = () -> requestScheduler.schedule(endpointUrl, request.getModel(), tokenCount, () -> retryPolicy.apply(() -> streamChatCompletionDeltas(openAiService, request)));
+            //return streamTestChatCompletion(TEST_MARKDOWN).map(chunk -> toDeltas(chunk.getChoices()))
+            return cached(responseCacheKey, text -> List.of(new ChatCompletionDelta(0, text)), source)
                     .doOnSubscribe(flowHandler.onSubscribe(event))
                     .doOnError(flowHandler.onError())
                     .doOnComplete(flowHandler.onComplete(ctx))
-                    .doOnNext(flowHandler.onNextChunk());
+                    .doOnNext(flowHandler.onNextDeltas());
         } else {
-            return Flowable.fromCallable(() -> openAiService.createChatCompletion(request))
+            Supplier<Flowable<ChatCompletionResult>> source = () -> requestScheduler.schedule(endpointUrl, request.getModel(), tokenCount, () -> retryPolicy.apply(() -> Flowable.fromCallable(() -> openAiService.createChatCompletion(request))));
+            return cached(responseCacheKey, ChatGptHandler::toCompletionResult, source)
                     .doOnSubscribe(flowHandler.onSubscribe(event))
                     .doOnError(flowHandler.onError())
                     .doOnComplete(flowHandler.onComplete(ctx))
@@ -110,14 +131,72 @@ public class ChatGptHandler {
         }
     }
 
+    private static String getResponseCacheKey(OpenAISettingsState settings, String endpointUrl, ChatCompletionRequest request) {
+        if (settings.isEnableResponseCache() && ResponseCache.isCacheable(request, settings.isCacheNonDeterministicResponses()))
+            return ResponseCache.keyOf(endpointUrl, request);
+        else
+            return null;
+    }
+
+    /**
+     * Answers the request from the response cache when possible, otherwise from the given source.
+     * The cache is looked up on subscription, so that the disk is not accessed on the calling thread.
+     */
+    private static <T> Flowable<T> cached(String responseCacheKey, Function<String, T> responseMapper, Supplier<Flowable<T>> source) {
+        if (responseCacheKey == null)
+            return source.get();
+
+        return Flowable.defer(() -> ResponseCache.getInstance().get(responseCacheKey)
+                .map(response -> Flowable.just(responseMapper.apply(response)))
+                .orElseGet(source));
+    }
+
+    private static ChatCompletionResult toCompletionResult(String response) {
+        var choice = new ChatCompletionChoice();
+        choice.setIndex(0);
+        choice.setMessage(new ChatMessage(ChatMessageRole.ASSISTANT.value(), response));
+        var result = new ChatCompletionResult();
+        result.setChoices(List.of(choice));
+        return result;
+    }
+
+    /**
+     * Counts tokens of the request against the tokens per minute limit, which also includes the maximum
+     * number of tokens of the response.
+     */
+    private static int countRequestTokens(ConversationContext ctx, ChatCompletionRequest request) {
+        int promptTokens = TokenCountCache.getInstance().countTokens(ctx.getModelType(), request.getMessages());
+        return promptTokens + Objects.requireNonNullElse(request.getMaxTokens(), 0);
+    }
+
+    private static Flowable<List<ChatCompletionDelta>> streamChatCompletionDeltas(OpenAiService openAiService, ChatCompletionRequest request) {
+        if (openAiService instanceof StreamingOpenAiService streamingService)
+            return streamingService.streamChatCompletionDeltas(request);
+        else
+            return openAiService.streamChatCompletion(request).map(chunk -> toDeltas(chunk.getChoices()));
+    }
+
+    private static List<ChatCompletionDelta> toDeltas(List<ChatCompletionChoice> choices) {
+        List<ChatCompletionDelta> deltas = new ArrayList<>(choices.size());
+        for (ChatCompletionChoice choice : choices)
+            deltas.add(new ChatCompletionDelta(choice.getIndex(), StringUtils.defaultString(choice.getMessage().getContent())));
+        return deltas;
+    }
+
     static class ChatCompletionHandler {
         private final ChatMessageListener listener;
-        private final SortedMap<Integer, StringBuffer> partialResponseChoices;
+        private final ChatResponseAccumulator partialResponseChoices;
         private volatile ChatMessageEvent.Started event;
+        private volatile String responseCacheKey;
+        private long sequenceNumber;
 
         public ChatCompletionHandler(ChatMessageListener listener) {
             this.listener = listener;
-            this.partialResponseChoices = Collections.synchronizedSortedMap(new TreeMap<>());
+            this.partialResponseChoices = new ChatResponseAccumulator();
+        }
+
+        public void setResponseCacheKey(String responseCacheKey) {
+            this.responseCacheKey = responseCacheKey;
         }
 
         public Consumer<Subscription> onSubscribe(ChatMessageEvent.Initiating event) {
@@ -128,18 +207,24 @@ public class ChatGptHandler {
 
         public Action onComplete(ConversationContext ctx) {
             return () -> {
-                var assistantMessages = toMessages(partialResponseChoices);
+                var assistantMessages = partialResponseChoices.snapshot().toMessages();
                 if (!assistantMessages.isEmpty()) {
-                    ctx.addChatMessage(assistantMessages.get(0));
+                    var assistantMessage = assistantMessages.get(0);
+                    ctx.addChatMessage(assistantMessage);
+                    ResponseLengthHistory.forModelPage(ctx.getModelPage())
+                            .record(TokenCountCache.getInstance().countTokens(ctx.getModelType(), assistantMessage));
+                    if (responseCacheKey != null && StringUtils.isNotEmpty(assistantMessage.getContent()))
+                        ResponseCache.getInstance().put(responseCacheKey, assistantMessage.getContent());
                 }
                 listener.responseArrived(event.responseArrived(assistantMessages));
             };
         }
 
-        public Consumer<ChatCompletionChunk> onNextChunk() {
-            return chunk -> {
-                if (!chunk.getChoices().isEmpty()) {
-                    listener.responseArriving(event.responseArriving(chunk, formResponse(chunk.getChoices())));
+        public Consumer<List<ChatCompletionDelta>> onNextDeltas() {
+            return streamedDeltas -> {
+                if (!streamedDeltas.isEmpty()) {
+                    var deltas = appendDeltas(streamedDeltas, sequenceNumber++);
+                    listener.responseArriving(event.responseArriving(deltas, partialResponseChoices.snapshot()));
                 }
             };
         }
@@ -147,7 +232,7 @@ public class ChatGptHandler {
         public Consumer<ChatCompletionResult> onNext() {
             return result -> {
                 if (!result.getChoices().isEmpty()) {
-                    listener.responseArrived(event.responseArrived(formResponse(result.getChoices())));
+                    listener.responseArrived(event.responseArrived(formResponse(result.getChoices()).toMessages()));
                 }
             };
         }
@@ -158,18 +243,19 @@ public class ChatGptHandler {
             };
         }
 
-        private List<ChatMessage> formResponse(List<ChatCompletionChoice> choices) {
-            choices.forEach(choice -> {
-                partialResponseChoices.computeIfAbsent(choice.getIndex(), __ -> new StringBuffer())
-                        .append(StringUtils.defaultIfEmpty(choice.getMessage().getContent(), ""));
-            });
-            return toMessages(partialResponseChoices);
+        private ChatResponseAccumulator.Snapshot formResponse(List<ChatCompletionChoice> choices) {
+            appendDeltas(toDeltas(choices), sequenceNumber++);
+            return partialResponseChoices.snapshot();
         }
 
-        private List<ChatMessage> toMessages(SortedMap<Integer, StringBuffer> partialResponseChoices) {
-            List<ChatMessage> responseChoices = new ArrayList<>(partialResponseChoices.size());
-            partialResponseChoices.forEach((key, value) -> responseChoices.add(new ChatMessage(ChatMessageRole.ASSISTANT.value(), value.toString())));
-            return responseChoices;
+        private List<ResponseDelta> appendDeltas(List<ChatCompletionDelta> streamedDeltas, long sequenceNumber) {
+            List<ResponseDelta> deltas = new ArrayList<>(streamedDeltas.size());
+            for (ChatCompletionDelta delta : streamedDeltas) {
+                String appendedText = delta.content();
+                int endOffset = partialResponseChoices.append(delta.choiceIndex(), appendedText).length();
+                deltas.add(new ResponseDelta(delta.choiceIndex(), sequenceNumber, endOffset - appendedText.length(), appendedText));
+            }
+            return deltas;
         }
     }
 }
@@ -4,27 +4,56 @@
  */
 package com.didalgo.intellij.chatgpt;
 
+import com.didalgo.intellij.chatgpt.settings.OpenAISettingsState;
 import com.didalgo.intellij.chatgpt.spi.OpenAiServiceFactory;
 import com.intellij.openapi.application.ApplicationManager;
 import com.theokanning.openai.service.OpenAiService;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Lock-free registry of OpenAI services, one per model page. Each service is tagged with the
+ * fingerprint of the configuration it was created from, and gets replaced when the configuration
+ * changes or the registry is {@linkplain #refresh() refreshed}. Replaced services are not shut down,
+ * so that the exchanges still streaming from them finish normally.
+ */
 public class OpenAIServiceHolder {
 
-    private static final Map<String, OpenAiService> openAiServices = new ConcurrentHashMap<>();
+    private static final Map<String, VersionedService> openAiServices = new ConcurrentHashMap<>();
+    private static final AtomicLong version = new AtomicLong();
+
+    private record Fingerprint(long version, String apiEndpointUrl, String apiKeyMasked, String readTimeout) { }
+
+    private record VersionedService(Fingerprint fingerprint, OpenAiService service) { }
+
+    public static OpenAiService getOpenAiService(String category) {
+        var fingerprint = fingerprintOf(category);
+        var current = openAiServices.get(category);
+        while (current == null || !current.fingerprint().equals(fingerprint)) {
+            // services are created outside any lock, so a slow creation does not block other pages
+            var created = new VersionedService(fingerprint, createOpenAiService(category));
+            boolean swapped = (current == null)
+                    ? openAiServices.putIfAbsent(category, created) == null
+                    : openAiServices.replace(category, current, created);
+            if (swapped)
+                return created.service();
+
+            current = openAiServices.get(category);
+            fingerprint = fingerprintOf(category);
+        }
+        return current.service();
+    }
 
-    public static synchronized OpenAiService getOpenAiService(String category) {
-        return openAiServices.computeIfAbsent(category, __ -> createOpenAiService(category));
+    public static void refresh() {
+        version.incrementAndGet();
     }
 
-    public static synchronized void refresh() {
-        List<OpenAiService> services = new ArrayList<>(openAiServices.values());
-        openAiServices.clear();
-        services.forEach(OpenAiService::shutdownExecutor);
+    private static Fingerprint fingerprintOf(String category) {
+        var settings = OpenAISettingsState.getInstance();
+        var config = settings.getConfigurationPage(category);
+        return new Fingerprint(version.get(), config.getApiEndpointUrl(), config.getApiKeyMasked(), settings.getReadTimeout());
     }
 
     protected static OpenAiService createOpenAiService(String group) {
@@ -27,6 +27,8 @@ public class ChatLinkService extends AbstractChatLink {
         this.conversationHandler = engine;
         this.conversationContext = new ChatLinkState(configuration);
         this.conversationContext.setTextSubstitutor(project.getService(TextSubstitutor.class));
+        if (configuration != null)
+            this.conversationContext.setConversationLog(ConversationLog.getInstance(project));
         this.inputContext = new DefaultInputContext();
     }
 
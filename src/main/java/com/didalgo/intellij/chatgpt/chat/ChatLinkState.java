@@ -8,26 +8,29 @@ import com.didalgo.gpt3.ChatFormatDescriptor;
 import com.didalgo.gpt3.GPT3Tokenizer;
 import com.didalgo.gpt3.ModelType;
 import com.didalgo.intellij.chatgpt.core.TextSubstitutor;
+import com.didalgo.intellij.chatgpt.core.TokenCountCache;
 import com.didalgo.intellij.chatgpt.text.TextContent;
 import com.intellij.openapi.application.ApplicationInfo;
 import com.theokanning.openai.completion.chat.ChatMessage;
 import com.theokanning.openai.completion.chat.ChatMessageRole;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Supplier;
 
 import static com.didalgo.intellij.chatgpt.chat.ChatMessageUtils.countTokens;
 import static com.didalgo.intellij.chatgpt.chat.ChatMessageUtils.isRoleSystem;
+import static com.didalgo.intellij.chatgpt.chat.ChatMessageUtils.truncateToTokenCount;
 
 public class ChatLinkState implements ConversationContext {
 
-    private final LinkedList<ChatMessage> chatMessages = new LinkedList<>();
+    private final ConversationStore chatMessages = new ConversationStore();
     private volatile List<? extends TextContent> lastSentTextFragments = List.of();
     private volatile TextSubstitutor textSubstitutor = TextSubstitutor.NONE;
     private final ConfigurationPage configuration;
-
+    private volatile ConversationLog conversationLog;
+    private volatile long conversationId = ConversationLog.newConversationId();
 
     public ChatLinkState(ConfigurationPage configuration) {
         this.configuration = configuration;
@@ -49,6 +52,10 @@ public class ChatLinkState implements ConversationContext {
         return textSubstitutor;
     }
 
+    public void setConversationLog(ConversationLog conversationLog) {
+        this.conversationLog = conversationLog;
+    }
+
     public Supplier<String> getSystemPrompt() {
         return getModelConfiguration().getSystemPrompt();
     }
@@ -69,17 +76,12 @@ public class ChatLinkState implements ConversationContext {
         if (message.getContent() == null)
             message = new ChatMessage(message.getRole(), "");
 
-        synchronized (chatMessages) {
-            if (!chatMessages.isEmpty()) {
-                if (message.getRole() == null || isRoleSystem(chatMessages.getLast()) && isRoleSystem(message)) {
-                    ChatMessage last = chatMessages.removeLast();
-                    message = new ChatMessage(last.getRole(), last.getContent() + message.getContent());
-                }
-                else if (Objects.equals(chatMessages.getLast().getRole(), message.getRole()))
-                    chatMessages.removeLast();
-            }
-            chatMessages.add(message);
+        var conversationLog = this.conversationLog;
+        if (conversationLog != null) {
+            int tokenCount = TokenCountCache.getInstance().countTokens(getModelType(), message);
+            conversationLog.append(conversationId, getModelPage(), message, tokenCount);
         }
+        chatMessages.add(message);
     }
 
     @Override
@@ -90,7 +92,7 @@ public class ChatLinkState implements ConversationContext {
 
     @Override
     public List<ChatMessage> getChatMessages(ModelType model, ChatMessage userMessage) {
-        var chatMessages = new LinkedList<ChatMessage>();
+        var chatMessages = new ArrayList<ChatMessage>();
 
         // First add current system message
         var systemMessage = getSystemPrompt().get();
@@ -102,24 +104,32 @@ public class ChatLinkState implements ConversationContext {
         }
         var hasSystemMessage = !chatMessages.isEmpty();
 
-        // Add the rest of messages in the chat
-        synchronized (this.chatMessages) {
-            if (!this.chatMessages.isEmpty())
-                chatMessages.addAll(this.chatMessages);
-
-            // Substitute template placeholders
-            substitutePlaceholders(chatMessages);
+        // Add the rest of messages in the chat, substituting template placeholders
+        var tokenCountCache = TokenCountCache.getInstance();
+        var snapshot = this.chatMessages.snapshot();
+        int[] messageTokenCounts = new int[chatMessages.size() + snapshot.size()];
+        if (hasSystemMessage)
+            messageTokenCounts[0] = tokenCountCache.countTokens(model, chatMessages.get(0));
+        var textSubstitutor = getTextSubstitutor();
+        for (int i = 0; i < snapshot.size(); i++) {
+            ChatMessage message = snapshot.get(i);
+            String resolved = textSubstitutor.resolvePlaceholders(message.getContent());
+            if (resolved == message.getContent()) {
+                messageTokenCounts[chatMessages.size()] = snapshot.getTokenCount(i, model);
+            } else {
+                message = new ChatMessage(message.getRole(), resolved);
+                messageTokenCounts[chatMessages.size()] = tokenCountCache.countTokens(model, message);
+            }
+            chatMessages.add(message);
+        }
 
-            // Trim messages if exceeding token limit
-            int maxTokens = model.maxTokens();
-            var tokenizer = model.getTokenizer();
-            var chatFormatDescriptor = model.getChatFormatDescriptor();
-            int removed = dropOldestMessagesToStayWithinTokenLimit(chatMessages, maxTokens, tokenizer, chatFormatDescriptor);
-            while (removed-- > 0)
-                this.chatMessages.remove(hasSystemMessage ? 1 : 0);
+        // Trim messages if exceeding token limit
+        int tokenLimit = getModelConfiguration().getTokenBudgetPolicy().getPromptTokenLimit(model.maxTokens());
+        int removed = dropOldestMessagesToStayWithinTokenLimit(chatMessages, messageTokenCounts, tokenLimit, model.getTokenizer(), model.getChatFormatDescriptor());
+        if (removed > 0)
+            this.chatMessages.removeOldest(snapshot, removed);
 
-            return chatMessages;
-        }
+        return chatMessages;
     }
 
     public void substitutePlaceholders(List<ChatMessage> chatMessages) {
@@ -127,26 +137,42 @@ public class ChatLinkState implements ConversationContext {
     }
 
     public int dropOldestMessagesToStayWithinTokenLimit(List<ChatMessage> messages, int maxTokens, GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
-        // here we assume ratio at most 2/3 available tokens for input prompt with context history,
-        // and at least 1/3 tokens for output
-        int tokenLimit = maxTokens*2/3;
-        int tokenCount;
-        int removed = 0;
+        int[] messageTokenCounts = new int[messages.size()];
+        for (int i = 0; i < messageTokenCounts.length; i++)
+            messageTokenCounts[i] = countTokens(messages.get(i), tokenizer, formatDescriptor);
+
+        int tokenLimit = TokenBudgetPolicy.DEFAULT.getPromptTokenLimit(maxTokens);
+        return dropOldestMessagesToStayWithinTokenLimit(messages, messageTokenCounts, tokenLimit, tokenizer, formatDescriptor);
+    }
+
+    public int dropOldestMessagesToStayWithinTokenLimit(List<ChatMessage> messages, int[] messageTokenCounts, int tokenLimit, GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
         boolean hasSystemMessage = !messages.isEmpty() && isRoleSystem(messages.get(0));
         int oldestMessageIndex = hasSystemMessage? 1: 0;
 
-        while ((tokenCount = countTokens(messages, tokenizer, formatDescriptor)) > tokenLimit && oldestMessageIndex < messages.size() - 1) {
-            messages.remove(oldestMessageIndex);
-            removed++;
+        // prefix sums of message token counts give the request token count after removing any number
+        // of oldest messages, so that the cut point is found by binary search without re-tokenization
+        int[] prefixSums = new int[messages.size() + 1];
+        for (int i = 0; i < messages.size(); i++)
+            prefixSums[i + 1] = prefixSums[i] + messageTokenCounts[i];
+        int requestTokenCount = countTokens(List.of(), tokenizer, formatDescriptor) + prefixSums[messages.size()];
+
+        // the most recent message is never removed
+        int low = 0, high = Math.max(0, messages.size() - 1 - oldestMessageIndex);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (requestTokenCount - (prefixSums[oldestMessageIndex + mid] - prefixSums[oldestMessageIndex]) <= tokenLimit)
+                high = mid;
+            else
+                low = mid + 1;
         }
+        int removed = low;
+        int tokenCount = requestTokenCount - (prefixSums[oldestMessageIndex + removed] - prefixSums[oldestMessageIndex]);
+        messages.subList(oldestMessageIndex, oldestMessageIndex + removed).clear();
 
-        if (tokenCount > tokenLimit) {
+        if (tokenCount > tokenLimit && oldestMessageIndex < messages.size()) {
             var lastMessage = messages.get(oldestMessageIndex);
-            // TODO: calculation is currently wrong
-            var lastMsgCutoff = lastMessage.getContent().length() - tokenLimit;
-            if (lastMsgCutoff > 0)
-                messages.set(oldestMessageIndex,
-                        new ChatMessage(lastMessage.getRole(), "[...] " + lastMessage.getContent().substring(lastMsgCutoff)));
+            int maxMessageTokens = messageTokenCounts[oldestMessageIndex + removed] - (tokenCount - tokenLimit);
+            messages.set(oldestMessageIndex, truncateToTokenCount(lastMessage, maxMessageTokens, tokenizer, formatDescriptor));
         }
         return removed;
     }
@@ -159,6 +185,14 @@ public class ChatLinkState implements ConversationContext {
     @Override
     public void clear() {
         chatMessages.clear();
+        conversationId = ConversationLog.newConversationId();
+        setLastPostedCodeFragments(List.of());
+    }
+
+    @Override
+    public void restore(long conversationId, List<ChatMessage> messages) {
+        chatMessages.replaceAll(messages);
+        this.conversationId = conversationId;
         setLastPostedCodeFragments(List.of());
     }
 }
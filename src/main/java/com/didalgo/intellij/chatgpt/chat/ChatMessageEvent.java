@@ -4,9 +4,11 @@
  */
 package com.didalgo.intellij.chatgpt.chat;
 
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
 import com.theokanning.openai.completion.chat.ChatCompletionChunk;
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
 import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
 import org.reactivestreams.Subscription;
 
 import java.util.*;
@@ -110,10 +112,35 @@ public abstract class ChatMessageEvent extends EventObject {
             return subscription;
         }
 
+        /**
+         * Creates the event from the raw chunk and the partial response choices received so far.
+         *
+         * @deprecated the streamed responses are no longer parsed into chunks, use
+         *             {@link #responseArriving(List, ChatResponseAccumulator.Snapshot)} instead
+         */
+        @Deprecated
         public ResponseArriving responseArriving(ChatCompletionChunk responseChunk, List<ChatMessage> partialResponseChoices) {
             requireNonNull(responseChunk, "responseChunk");
             requireNonNull(partialResponseChoices, "partialResponseChoices");
-            return new ResponseArriving(this, responseChunk, partialResponseChoices);
+            var deltas = new ArrayList<ResponseDelta>();
+            for (ChatCompletionChoice choice : responseChunk.getChoices()) {
+                int choiceIndex = choice.getIndex();
+                String appendedText = (choice.getMessage() == null)? null : choice.getMessage().getContent();
+                if (appendedText != null && !appendedText.isEmpty() && choiceIndex < partialResponseChoices.size()) {
+                    String text = Objects.toString(partialResponseChoices.get(choiceIndex).getContent(), "");
+                    deltas.add(new ResponseDelta(choiceIndex, 0, Math.max(0, text.length() - appendedText.length()), appendedText));
+                }
+            }
+            var texts = new ArrayList<ChatResponseAccumulator.ChoiceText>(partialResponseChoices.size());
+            for (ChatMessage choice : partialResponseChoices)
+                texts.add(ChatResponseAccumulator.ChoiceText.of(Objects.toString(choice.getContent(), "")));
+            return responseArriving(deltas, new ChatResponseAccumulator.Snapshot(texts));
+        }
+
+        public ResponseArriving responseArriving(List<ResponseDelta> deltas, ChatResponseAccumulator.Snapshot partialResponse) {
+            requireNonNull(deltas, "deltas");
+            requireNonNull(partialResponse, "partialResponse");
+            return new ResponseArriving(this, deltas, partialResponse);
         }
 
         public ResponseArrived responseArrived(List<ChatMessage> responseChoices) {
@@ -142,21 +169,75 @@ public abstract class ChatMessageEvent extends EventObject {
     }
 
     public static class ResponseArriving extends Started {
-        private final ChatCompletionChunk responseChunk;
-        private final List<ChatMessage> partialResponseChoices;
+        private final List<ResponseDelta> deltas;
+        private final ChatResponseAccumulator.Snapshot partialResponse;
 
-        protected ResponseArriving(Started sourceEvent, ChatCompletionChunk responseChunk, List<ChatMessage> partialResponseChoices) {
+        protected ResponseArriving(Started sourceEvent, List<ResponseDelta> deltas, ChatResponseAccumulator.Snapshot partialResponse) {
             super(sourceEvent);
-            this.responseChunk = responseChunk;
-            this.partialResponseChoices = partialResponseChoices;
+            this.deltas = List.copyOf(deltas);
+            this.partialResponse = partialResponse;
         }
 
+        /**
+         * Returns the chunk appended to the response, rebuilt from the {@linkplain #getDeltas() deltas},
+         * i.e. holding just the indexes and the appended texts of the choices.
+         *
+         * @deprecated the streamed responses are no longer parsed into chunks, use {@link #getDeltas()} instead
+         */
+        @Deprecated
         public final ChatCompletionChunk getResponseChunk() {
-            return responseChunk;
+            var choices = new ArrayList<ChatCompletionChoice>(deltas.size());
+            for (ResponseDelta delta : deltas) {
+                var choice = new ChatCompletionChoice();
+                choice.setIndex(delta.choiceIndex());
+                choice.setMessage(new ChatMessage(ChatMessageRole.ASSISTANT.value(), delta.appendedText()));
+                choices.add(choice);
+            }
+            var chunk = new ChatCompletionChunk();
+            chunk.setChoices(choices);
+            return chunk;
+        }
+
+        /**
+         * Returns the pieces of text appended by this chunk, at most one per response choice.
+         * Listeners can use them to do work proportional to the newly arrived text only.
+         *
+         * @return the response deltas carried by this chunk
+         */
+        public final List<ResponseDelta> getDeltas() {
+            return deltas;
         }
 
+        /**
+         * Returns the delta appended to the given response choice by this chunk.
+         *
+         * @param choiceIndex the response choice index
+         * @return the delta, or empty if this chunk didn't append anything to the choice
+         */
+        public final Optional<ResponseDelta> getDelta(int choiceIndex) {
+            for (ResponseDelta delta : deltas)
+                if (delta.choiceIndex() == choiceIndex)
+                    return Optional.of(delta);
+            return Optional.empty();
+        }
+
+        /**
+         * Returns the partial response choices received so far, materialized as chat messages.
+         * Prefer {@link #getPartialResponseTexts()} when the full message strings aren't needed.
+         *
+         * @return the partial response choices
+         */
         public final List<ChatMessage> getPartialResponseChoices() {
-            return partialResponseChoices;
+            return partialResponse.toMessages();
+        }
+
+        /**
+         * Returns the cheap, lazily materialized views of the partial response choices received so far.
+         *
+         * @return the partial response texts, one per choice
+         */
+        public final List<ChatResponseAccumulator.ChoiceText> getPartialResponseTexts() {
+            return partialResponse.getChoices();
         }
     }
 
@@ -19,6 +19,8 @@ import java.util.Objects;
 
 public class ChatMessageUtils {
 
+    public static final String TRUNCATION_MARKER = "[...] ";
+
     public static List<? extends TextContent> composeExcept(List<? extends TextContent> textContents, List<? extends TextContent> exceptions, String exceptionPrompt) {
         for (var codeFragment : textContents)
             if (!exceptions.contains(codeFragment) && !exceptionPrompt.contains(TextContent.toString(codeFragment).strip()))
@@ -73,4 +75,42 @@ public class ChatMessageUtils {
     public static int countTokens(List<ChatMessage> messages, GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
         return TokenCount.fromMessages(messages, tokenizer, formatDescriptor);
     }
+
+    /**
+     * Counts the tokens contributed by the single message to the request, i.e. excluding
+     * the per-request overhead, which is counted by {@code countTokens(List.of(), ...)}.
+     */
+    public static int countTokens(ChatMessage message, GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
+        return countTokens(List.of(message), tokenizer, formatDescriptor) - countTokens(List.of(), tokenizer, formatDescriptor);
+    }
+
+    /**
+     * Truncates the beginning of the message content at the token boundary, so that the message,
+     * prefixed with the {@link #TRUNCATION_MARKER}, contributes at most {@code maxTokenCount} tokens
+     * to the request, as counted by {@link #countTokens(ChatMessage, GPT3Tokenizer, ChatFormatDescriptor)}.
+     *
+     * @param message the message to truncate
+     * @param maxTokenCount the maximum token count of the truncated message
+     * @param tokenizer the tokenizer
+     * @param formatDescriptor the chat format descriptor
+     * @return the truncated message, or the message itself if it already fits
+     */
+    public static ChatMessage truncateToTokenCount(ChatMessage message, int maxTokenCount, GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
+        if (countTokens(message, tokenizer, formatDescriptor) <= maxTokenCount)
+            return message;
+
+        List<Integer> tokens = tokenizer.encode(StringUtils.defaultString(message.getContent()));
+        int overhead = countTokens(new ChatMessage(message.getRole(), TRUNCATION_MARKER), tokenizer, formatDescriptor);
+        int keptTokenCount = Math.min(tokens.size(), Math.max(0, maxTokenCount - overhead));
+        while (true) {
+            String tail = tokenizer.decode(tokens.subList(tokens.size() - keptTokenCount, tokens.size()));
+            // skip the remains of a multibyte character split at the token boundary
+            tail = StringUtils.stripStart(tail, "\uFFFD");
+            var truncated = new ChatMessage(message.getRole(), TRUNCATION_MARKER + tail);
+            // the marker and the kept tokens may occasionally merge differently when re-encoded
+            if (keptTokenCount == 0 || countTokens(truncated, tokenizer, formatDescriptor) <= maxTokenCount)
+                return truncated;
+            keptTokenCount--;
+        }
+    }
 }
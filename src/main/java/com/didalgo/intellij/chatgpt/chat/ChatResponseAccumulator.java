@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Accumulates streamed chat completion choices in append-only chunk lists.
+ * <p>
+ * Appending a chunk is amortized O(1) and doesn't copy previously received text. The accumulated
+ * text of each choice is exposed as an immutable {@link ChoiceText} view, which is materialized
+ * into a {@code String} only when actually requested, and then reuses the previously materialized
+ * prefix, so that a long streamed answer isn't copied over and over again on every chunk.
+ */
+public class ChatResponseAccumulator {
+
+    private final SortedMap<Integer, ChoiceBuffer> choices = new TreeMap<>();
+
+    /**
+     * Appends the given text to the choice with the given index.
+     *
+     * @param choiceIndex the index of the response choice
+     * @param text the text to append, may be {@code null}
+     * @return the view of the accumulated choice text, including the appended text
+     */
+    public synchronized ChoiceText append(int choiceIndex, String text) {
+        return choices.computeIfAbsent(choiceIndex, __ -> new ChoiceBuffer()).append(text);
+    }
+
+    /**
+     * Takes the immutable snapshot of all choices accumulated so far.
+     *
+     * @return the current snapshot
+     */
+    public synchronized Snapshot snapshot() {
+        var texts = new ArrayList<ChoiceText>(choices.size());
+        choices.values().forEach(buffer -> texts.add(buffer.view()));
+        return new Snapshot(texts);
+    }
+
+    /**
+     * Immutable, point-in-time view of the accumulated response choices.
+     */
+    public static final class Snapshot {
+        private final List<ChoiceText> choices;
+        private volatile List<ChatMessage> messages;
+
+        Snapshot(List<ChoiceText> choices) {
+            this.choices = List.copyOf(choices);
+        }
+
+        public List<ChoiceText> getChoices() {
+            return choices;
+        }
+
+        /**
+         * Materializes the snapshot as assistant messages. The result is computed once and cached.
+         *
+         * @return the list of assistant messages, one per choice
+         */
+        public List<ChatMessage> toMessages() {
+            var result = messages;
+            if (result == null) {
+                var list = new ArrayList<ChatMessage>(choices.size());
+                choices.forEach(text -> list.add(new ChatMessage(ChatMessageRole.ASSISTANT.value(), text.toString())));
+                messages = result = List.copyOf(list);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Immutable view of the text accumulated for a single choice up to some point in time.
+     */
+    public static final class ChoiceText implements CharSequence {
+        private final ChoiceBuffer buffer;
+        private final int chunkCount;
+        private final int length;
+
+        ChoiceText(ChoiceBuffer buffer, int chunkCount, int length) {
+            this.buffer = buffer;
+            this.chunkCount = chunkCount;
+            this.length = length;
+        }
+
+        public static ChoiceText of(String text) {
+            return new ChoiceBuffer().append(text);
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new StringIndexOutOfBoundsException("index " + index + ", length " + length);
+            return buffer.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return buffer.toString(chunkCount, length);
+        }
+    }
+
+    static final class ChoiceBuffer {
+        private String[] chunks = new String[16];
+        private int[] chunkEnds = new int[16];
+        private int chunkCount;
+        private int length;
+        private String materialized = "";
+        private int materializedChunkCount;
+
+        synchronized ChoiceText append(String text) {
+            if (text != null && !text.isEmpty()) {
+                if (chunkCount == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                    chunkEnds = Arrays.copyOf(chunkEnds, chunkCount * 2);
+                }
+                length += text.length();
+                chunks[chunkCount] = text;
+                chunkEnds[chunkCount] = length;
+                chunkCount++;
+            }
+            return view();
+        }
+
+        synchronized ChoiceText view() {
+            return new ChoiceText(this, chunkCount, length);
+        }
+
+        synchronized char charAt(int index) {
+            if (index < materialized.length())
+                return materialized.charAt(index);
+
+            int i = Arrays.binarySearch(chunkEnds, materializedChunkCount, chunkCount, index);
+            i = (i >= 0) ? i + 1 : -i - 1;
+            int chunkStart = (i == 0) ? 0 : chunkEnds[i - 1];
+            return chunks[i].charAt(index - chunkStart);
+        }
+
+        synchronized String toString(int upToChunkCount, int upToLength) {
+            if (upToChunkCount <= materializedChunkCount)
+                return (upToLength == materialized.length()) ? materialized : materialized.substring(0, upToLength);
+
+            var buf = new StringBuilder(upToLength).append(materialized);
+            for (int i = materializedChunkCount; i < upToChunkCount; i++) {
+                buf.append(chunks[i]);
+                chunks[i] = null; // already folded into the materialized prefix
+            }
+            materialized = buf.toString();
+            materializedChunkCount = upToChunkCount;
+            return materialized;
+        }
+    }
+}
@@ -12,6 +12,10 @@ public interface ConfigurationPage {
 
     boolean isEnableStreamResponse();
 
+    default TokenBudgetPolicy getTokenBudgetPolicy() {
+        return TokenBudgetPolicy.DEFAULT;
+    }
+
     default ConfigurationPage withSystemPrompt(Supplier<String> systemPrompt) {
         return new ConfigurationPageProxy(this) {
             @Override
@@ -32,4 +32,9 @@ class ConfigurationPageProxy implements ConfigurationPage {
     public boolean isEnableStreamResponse() {
         return getDelegate().isEnableStreamResponse();
     }
+
+    @Override
+    public TokenBudgetPolicy getTokenBudgetPolicy() {
+        return getDelegate().getTokenBudgetPolicy();
+    }
 }
@@ -14,6 +14,15 @@ public interface ConversationContext {
 
     void clear();
 
+    /**
+     * Replaces the messages of this conversation with the ones of an earlier conversation, so that
+     * it's continued.
+     *
+     * @param conversationId the id of the earlier conversation in the {@link ConversationLog}
+     * @param messages the messages of the earlier conversation
+     */
+    void restore(long conversationId, List<ChatMessage> messages);
+
     String getModelPage();
 
     List<? extends TextContent> getLastPostedCodeFragments();
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.theokanning.openai.completion.chat.ChatMessage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of the conversations held in a project, which keeps them after the IDE is closed
+ * or a new chat is started.
+ * <p>
+ * The log is a sequence of length-prefixed records, each either opening a conversation or holding
+ * one of its messages. It's indexed lazily, on first read, by scanning the record headers, and only
+ * the offsets of the messages are kept in the index, so that old conversations are decoded from
+ * a memory-mapped view of the file when browsed instead of being held in the heap.
+ * <p>
+ * The messages are appended in the background, one after another in the order given, so that
+ * the callers, usually on the event dispatch thread, don't wait for the file.
+ */
+public class ConversationLog implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(ConversationLog.class);
+
+    private static final byte CONVERSATION_RECORD = 1;
+    private static final byte MESSAGE_RECORD = 2;
+    /** Length of the record header: record length, kind, conversation id and timestamp. */
+    private static final int HEADER_LENGTH = 4 + 1 + 8 + 8;
+    private static final int TITLE_LENGTH = 80;
+    /** Length of the beginning of the message record read when indexing: token count, role and title. */
+    private static final int SCANNED_MESSAGE_LENGTH = 4 + 4 + 64 + 4 + TITLE_LENGTH * 4;
+
+    private static final AtomicLong lastConversationId = new AtomicLong();
+
+    /**
+     * Summary of the logged conversation, shown when browsing the history.
+     *
+     * @param id the conversation id
+     * @param modelPage the model page the conversation was held on
+     * @param startTime the time of the first message
+     * @param lastTime the time of the last message
+     * @param messageCount the number of messages
+     * @param title the beginning of the first user message
+     */
+    public record ConversationSummary(long id, String modelPage, Instant startTime, Instant lastTime, int messageCount, String title) { }
+
+    /**
+     * Message read back from the log.
+     *
+     * @param message the message
+     * @param tokenCount the number of tokens of the message, as counted when logged
+     * @param timestamp the time the message was logged
+     */
+    public record LoggedMessage(ChatMessage message, int tokenCount, Instant timestamp) { }
+
+    private static final class ConversationIndex {
+        private final long id;
+        private final String modelPage;
+        private long startTime;
+        private long lastTime;
+        private String title = "";
+        private long[] messageOffsets = new long[8];
+        private int messageCount;
+
+        ConversationIndex(long id, String modelPage, long startTime) {
+            this.id = id;
+            this.modelPage = modelPage;
+            this.startTime = this.lastTime = startTime;
+        }
+
+        void addMessage(long offset, long timestamp) {
+            if (messageCount == messageOffsets.length)
+                messageOffsets = Arrays.copyOf(messageOffsets, messageCount * 2);
+            messageOffsets[messageCount++] = offset;
+            lastTime = timestamp;
+        }
+
+        ConversationSummary toSummary() {
+            return new ConversationSummary(id, modelPage, Instant.ofEpochMilli(startTime), Instant.ofEpochMilli(lastTime), messageCount, title);
+        }
+    }
+
+    private final Path file;
+    /** Writes the appended messages in order, off the calling thread. */
+    private final ExecutorService appender = AppExecutorUtil.createBoundedApplicationPoolExecutor("Conversation Log", 1);
+    private FileChannel channel;
+    private MappedByteBuffer mappedFile;
+    /** Conversations in the order they were started, {@code null} until the log is first read. */
+    private LinkedHashMap<Long, ConversationIndex> conversations;
+    private long lastAppendedConversationId;
+
+    public static ConversationLog getInstance(Project project) {
+        return project.getService(ConversationLog.class);
+    }
+
+    public ConversationLog(Project project) {
+        this(Path.of(PathManager.getSystemPath(), "didalgo-chatgpt", "conversations", project.getLocationHash() + ".log"));
+    }
+
+    public ConversationLog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Gives the id for a new conversation, unique and increasing over time.
+     *
+     * @return the new conversation id
+     */
+    public static long newConversationId() {
+        long now = System.currentTimeMillis();
+        return lastConversationId.accumulateAndGet(now, (last, time) -> Math.max(last + 1, time));
+    }
+
+    /**
+     * Appends the message to the log of the given conversation. The message is written in the
+     * background, but is seen by the subsequent reads of the log.
+     *
+     * @param conversationId the conversation id
+     * @param modelPage the model page the conversation is held on
+     * @param message the message
+     * @param tokenCount the number of tokens of the message
+     */
+    public void append(long conversationId, String modelPage, ChatMessage message, int tokenCount) {
+        appender.execute(() -> write(conversationId, modelPage, message, tokenCount));
+    }
+
+    private synchronized void write(long conversationId, String modelPage, ChatMessage message, int tokenCount) {
+        try {
+            // the log is indexed before the first append, which truncates the tail possibly left
+            // incomplete by a crash, so that the records appended don't follow it
+            var conversations = loadIndex();
+            long timestamp = System.currentTimeMillis();
+            var channel = openChannel();
+            if (conversationId != lastAppendedConversationId) {
+                writeRecord(channel, encodeConversation(conversationId, timestamp, modelPage));
+                lastAppendedConversationId = conversationId;
+                conversations.putIfAbsent(conversationId, new ConversationIndex(conversationId, modelPage, timestamp));
+            }
+            long offset = writeRecord(channel, encodeMessage(conversationId, timestamp, message, tokenCount));
+            indexMessage(conversations.get(conversationId), offset, timestamp, message.getRole(), message.getContent());
+        } catch (IOException e) {
+            LOG.warn("Unable to write conversation log " + file, e);
+        }
+    }
+
+    /**
+     * Reads the index of the log, when not read yet, so that the history is ready to be browsed.
+     */
+    public void load() {
+        awaitPendingAppends();
+        synchronized (this) {
+            loadIndex();
+        }
+    }
+
+    /**
+     * Gives the summaries of the logged conversations, the most recently continued first.
+     *
+     * @return the conversation summaries
+     */
+    public List<ConversationSummary> getConversations() {
+        awaitPendingAppends();
+        var summaries = new ArrayList<ConversationSummary>();
+        synchronized (this) {
+            for (var conversation : loadIndex().values())
+                if (conversation.messageCount > 0)
+                    summaries.add(conversation.toSummary());
+        }
+        summaries.sort(Comparator.comparing(ConversationSummary::lastTime).thenComparingLong(ConversationSummary::id).reversed());
+        return summaries;
+    }
+
+    /**
+     * Reads the messages of the given conversation from the log.
+     *
+     * @param conversationId the conversation id
+     * @return the messages, in the order they were logged, or an empty list if the conversation is unknown
+     */
+    public List<LoggedMessage> readConversation(long conversationId) {
+        awaitPendingAppends();
+        return readMessages(conversationId);
+    }
+
+    private synchronized List<LoggedMessage> readMessages(long conversationId) {
+        var conversation = loadIndex().get(conversationId);
+        if (conversation == null)
+            return List.of();
+
+        try {
+            var buffer = map();
+            var messages = new ArrayList<LoggedMessage>(conversation.messageCount);
+            for (int i = 0; i < conversation.messageCount; i++)
+                messages.add(decodeMessage(buffer, (int) conversation.messageOffsets[i]));
+            return messages;
+        } catch (IOException e) {
+            LOG.warn("Unable to read conversation log " + file, e);
+            return List.of();
+        }
+    }
+
+    private LinkedHashMap<Long, ConversationIndex> loadIndex() {
+        if (conversations == null) {
+            conversations = new LinkedHashMap<>();
+            try {
+                if (Files.exists(file))
+                    scan(openChannel());
+            } catch (IOException e) {
+                LOG.warn("Unable to read conversation log " + file, e);
+            }
+        }
+        return conversations;
+    }
+
+    /**
+     * Indexes the log by reading the record headers, and the beginning of the messages for their titles,
+     * through the channel rather than a mapped view, so that the incomplete tail can be truncated, which
+     * isn't possible on all platforms while the file is mapped.
+     */
+    private void scan(FileChannel channel) throws IOException {
+        long size = channel.size();
+        var header = ByteBuffer.allocate(HEADER_LENGTH);
+        var messageStart = ByteBuffer.allocate(SCANNED_MESSAGE_LENGTH);
+        long offset = 0;
+        while (size - offset >= HEADER_LENGTH) {
+            readFully(channel, header.clear(), offset);
+            int length = header.getInt(0);
+            if (length < HEADER_LENGTH - 4 || length > size - offset - 4)
+                break;
+
+            byte kind = header.get(4);
+            long conversationId = header.getLong(5);
+            long timestamp = header.getLong(13);
+            int bodyLength = 4 + length - HEADER_LENGTH;
+            try {
+                if (kind == CONVERSATION_RECORD) {
+                    var body = ByteBuffer.allocate(bodyLength);
+                    readFully(channel, body, offset + HEADER_LENGTH);
+                    String modelPage = getString(body.flip());
+                    conversations.putIfAbsent(conversationId, new ConversationIndex(conversationId, modelPage, timestamp));
+                } else if (kind == MESSAGE_RECORD) {
+                    var conversation = conversations.get(conversationId);
+                    if (conversation != null) {
+                        var record = messageStart.clear().limit(Math.min(bodyLength, SCANNED_MESSAGE_LENGTH));
+                        readFully(channel, record, offset + HEADER_LENGTH);
+                        record.flip().position(4);
+                        String role = getString(record);
+                        indexMessage(conversation, offset, timestamp, role, getTitle(record));
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                // the record is corrupt, which makes it the beginning of the incomplete tail
+                break;
+            }
+            offset += 4 + length;
+        }
+
+        if (offset < size) {
+            // the tail of the log was left incomplete by an interrupted write
+            LOG.info("Truncating incomplete conversation log " + file + " at " + offset);
+            channel.truncate(offset);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0)
+                throw new EOFException();
+            position += count;
+        }
+    }
+
+    private static void indexMessage(ConversationIndex conversation, long offset, long timestamp, String role, String content) {
+        if (conversation.messageCount == 0)
+            conversation.startTime = timestamp;
+        if (conversation.title.isEmpty() && "user".equals(role) && content != null)
+            conversation.title = toTitle(content);
+        conversation.addMessage(offset, timestamp);
+    }
+
+    private static String toTitle(String content) {
+        String title = content.strip().replaceAll("\\s+", " ");
+        return (title.length() > TITLE_LENGTH)? title.substring(0, TITLE_LENGTH - 1) + "…" : title;
+    }
+
+    /** Decodes just enough of the message content, which may be long, to make the title. */
+    private static String getTitle(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0)
+            throw new BufferUnderflowException();
+        var bytes = new byte[Math.min(length, Math.min(TITLE_LENGTH * 4, record.remaining()))];
+        record.get(bytes);
+        String content = new String(bytes, StandardCharsets.UTF_8);
+        // drop the character possibly cut in the middle
+        return (bytes.length < length && content.endsWith("\uFFFD"))? content.substring(0, content.length() - 1) : content;
+    }
+
+    private static LoggedMessage decodeMessage(ByteBuffer buffer, int offset) {
+        var record = buffer.duplicate().position(offset + 13);
+        long timestamp = record.getLong();
+        int tokenCount = record.getInt();
+        String role = getString(record);
+        var bytes = new byte[record.getInt()];
+        record.get(bytes);
+        var message = new ChatMessage(role, new String(bytes, StandardCharsets.UTF_8));
+        return new LoggedMessage(message, tokenCount, Instant.ofEpochMilli(timestamp));
+    }
+
+    private static ByteBuffer encodeConversation(long conversationId, long timestamp, String modelPage) {
+        byte[] modelPageBytes = Objects.toString(modelPage, "").getBytes(StandardCharsets.UTF_8);
+        var record = header(CONVERSATION_RECORD, conversationId, timestamp, 4 + modelPageBytes.length);
+        putBytes(record, modelPageBytes);
+        return record.flip();
+    }
+
+    private static ByteBuffer encodeMessage(long conversationId, long timestamp, ChatMessage message, int tokenCount) {
+        byte[] roleBytes = Objects.toString(message.getRole(), "").getBytes(StandardCharsets.UTF_8);
+        byte[] contentBytes = Objects.toString(message.getContent(), "").getBytes(StandardCharsets.UTF_8);
+        var record = header(MESSAGE_RECORD, conversationId, timestamp, 4 + 4 + roleBytes.length + 4 + contentBytes.length);
+        record.putInt(tokenCount);
+        putBytes(record, roleBytes);
+        putBytes(record, contentBytes);
+        return record.flip();
+    }
+
+    private static ByteBuffer header(byte kind, long conversationId, long timestamp, int bodyLength) {
+        return ByteBuffer.allocate(HEADER_LENGTH + bodyLength)
+                .putInt(HEADER_LENGTH - 4 + bodyLength)
+                .put(kind)
+                .putLong(conversationId)
+                .putLong(timestamp);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long writeRecord(FileChannel channel, ByteBuffer record) throws IOException {
+        long offset = channel.size(), position = offset;
+        while (record.hasRemaining())
+            position += channel.write(record, position);
+        return offset;
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    /** Maps the whole log, remapping it when it grew since mapped last. */
+    private ByteBuffer map() throws IOException {
+        var channel = openChannel();
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Conversation log too large: " + file);
+        if (mappedFile == null || mappedFile.capacity() != size)
+            mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return mappedFile;
+    }
+
+    /** Waits until the messages appended so far are written. */
+    private void awaitPendingAppends() {
+        try {
+            appender.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.warn("Unable to write conversation log " + file, e);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        awaitPendingAppends();
+        close();
+    }
+
+    private synchronized void close() {
+        mappedFile = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close conversation log " + file, e);
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.gpt3.ModelType;
+import com.didalgo.intellij.chatgpt.core.TokenCountCache;
+import com.theokanning.openai.completion.chat.ChatMessage;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.ToIntBiFunction;
+
+import static com.didalgo.intellij.chatgpt.chat.ChatMessageUtils.isRoleSystem;
+
+/**
+ * Messages of the conversation, held in an array-backed ring buffer, so that the oldest messages
+ * are dropped in constant time. Each message keeps its token count once counted, and the messages
+ * are read through {@linkplain Snapshot snapshots}, taken without blocking the writers in the
+ * common case.
+ */
+public final class ConversationStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private final ToIntBiFunction<ModelType, ChatMessage> tokenCounter;
+    private Entry[] entries = new Entry[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    public ConversationStore() {
+        this((model, message) -> TokenCountCache.getInstance().countTokens(model, message));
+    }
+
+    ConversationStore(ToIntBiFunction<ModelType, ChatMessage> tokenCounter) {
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * Message of the conversation, with its token count cached for the model it was last counted for.
+     */
+    private static final class Entry {
+        private final ChatMessage message;
+        private volatile TokenCount tokenCount;
+
+        Entry(ChatMessage message) {
+            this.message = message;
+        }
+    }
+
+    private record TokenCount(ModelType model, int count) { }
+
+    /**
+     * Adds the message at the end of the conversation. A message without a role, or a system
+     * message following another one, is appended to the content of the last message, while a
+     * message of the same role as the last message replaces it.
+     *
+     * @param message the message
+     */
+    public void add(ChatMessage message) {
+        long stamp = lock.writeLock();
+        try {
+            addUnlocked(message);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces all messages of the conversation with the given ones, added as by {@link #add}.
+     *
+     * @param messages the messages
+     */
+    public void replaceAll(List<ChatMessage> messages) {
+        long stamp = lock.writeLock();
+        try {
+            clearUnlocked();
+            messages.forEach(this::addUnlocked);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void addUnlocked(ChatMessage message) {
+        if (size > 0) {
+            ChatMessage last = entries[index(size - 1)].message;
+            if (message.getRole() == null || isRoleSystem(last) && isRoleSystem(message)) {
+                removeLastUnlocked();
+                message = new ChatMessage(last.getRole(), last.getContent() + message.getContent());
+            }
+            else if (Objects.equals(last.getRole(), message.getRole()))
+                removeLastUnlocked();
+        }
+        if (size == entries.length)
+            grow();
+        entries[index(size++)] = new Entry(message);
+    }
+
+    private void removeLastUnlocked() {
+        entries[index(--size)] = null;
+    }
+
+    private void grow() {
+        var grown = new Entry[entries.length * 2];
+        for (int i = 0; i < size; i++)
+            grown[i] = entries[index(i)];
+        entries = grown;
+        head = 0;
+    }
+
+    /**
+     * Removes the given number of the oldest messages, provided they are still the oldest messages
+     * of the given snapshot, i.e. they were not removed or replaced since the snapshot was taken.
+     *
+     * @param snapshot the snapshot the messages were chosen from
+     * @param count the number of messages to remove
+     * @return the number of messages removed
+     */
+    public int removeOldest(Snapshot snapshot, int count) {
+        long stamp = lock.writeLock();
+        try {
+            int removed = 0;
+            while (removed < count && size > 0 && entries[head] == snapshot.entries[removed]) {
+                entries[head] = null;
+                head = index(1);
+                size--;
+                removed++;
+            }
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            clearUnlocked();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void clearUnlocked() {
+        Arrays.fill(entries, null);
+        head = size = 0;
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = this.size;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                size = this.size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Takes the read-only snapshot of the messages of the conversation, unaffected by later changes.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            // the fields read may be inconsistent if a writer intervened, which is caught by validation,
+            // but must be checked not to copy out of the bounds of the array before it
+            Entry[] entries = this.entries;
+            int head = this.head, size = this.size;
+            if (size <= entries.length && head < entries.length) {
+                Entry[] copy = copyOf(entries, head, size);
+                if (lock.validate(stamp))
+                    return new Snapshot(copy);
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return new Snapshot(copyOf(entries, head, size));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static Entry[] copyOf(Entry[] entries, int head, int size) {
+        var copy = new Entry[size];
+        int firstPart = Math.min(size, entries.length - head);
+        System.arraycopy(entries, head, copy, 0, firstPart);
+        System.arraycopy(entries, 0, copy, firstPart, size - firstPart);
+        return copy;
+    }
+
+    private int index(int offset) {
+        int index = head + offset;
+        return (index >= entries.length)? index - entries.length : index;
+    }
+
+    /**
+     * Read-only list of the messages of the conversation at the time the snapshot was taken.
+     */
+    public final class Snapshot extends AbstractList<ChatMessage> implements RandomAccess {
+        private final Entry[] entries;
+
+        private Snapshot(Entry[] entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public ChatMessage get(int index) {
+            return entries[index].message;
+        }
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+
+        /**
+         * Gives the number of tokens contributed by the message at the given index to the request of
+         * the given model, counted once per message.
+         *
+         * @param index the message index
+         * @param model the model type
+         * @return the token count, excluding the per-request overhead
+         */
+        public int getTokenCount(int index, ModelType model) {
+            var entry = entries[index];
+            var tokenCount = entry.tokenCount;
+            if (tokenCount == null || tokenCount.model() != model)
+                entry.tokenCount = tokenCount = new TokenCount(model, tokenCounter.applyAsInt(model, entry.message));
+            return tokenCount.count();
+        }
+    }
+}
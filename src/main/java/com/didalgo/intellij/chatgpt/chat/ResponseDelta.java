@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A piece of text appended to a single response choice by a single streamed chunk.
+ *
+ * @param choiceIndex the index of the response choice the text was appended to
+ * @param sequenceNumber the 0-based number of the chunk within the exchange
+ * @param startOffset the offset in the accumulated choice text at which the text was appended
+ * @param appendedText the appended text
+ */
+public record ResponseDelta(int choiceIndex, long sequenceNumber, int startOffset, String appendedText) {
+
+    public ResponseDelta {
+        requireNonNull(appendedText, "appendedText");
+        if (startOffset < 0)
+            throw new IllegalArgumentException("startOffset: " + startOffset);
+    }
+
+    /**
+     * Returns the offset in the accumulated choice text just after the appended text.
+     *
+     * @return the end offset, exclusive
+     */
+    public int endOffset() {
+        return startOffset + appendedText.length();
+    }
+}
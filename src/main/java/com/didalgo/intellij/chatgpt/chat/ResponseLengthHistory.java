@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token counts of the most recent responses received on a model page, used by the
+ * {@linkplain TokenBudgetPolicy#adaptive(ResponseLengthHistory, int) adaptive} token budget policy.
+ */
+public final class ResponseLengthHistory {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static final Map<String, ResponseLengthHistory> histories = new ConcurrentHashMap<>();
+
+    public static ResponseLengthHistory forModelPage(String modelPage) {
+        return histories.computeIfAbsent(modelPage, __ -> new ResponseLengthHistory(DEFAULT_CAPACITY));
+    }
+
+    private final int[] lengths;
+    private int count;
+    private int next;
+
+    public ResponseLengthHistory(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+
+        this.lengths = new int[capacity];
+    }
+
+    public synchronized void record(int responseTokens) {
+        lengths[next] = responseTokens;
+        next = (next + 1) % lengths.length;
+        count = Math.min(count + 1, lengths.length);
+    }
+
+    public synchronized OptionalInt getLongest() {
+        if (count == 0)
+            return OptionalInt.empty();
+
+        int longest = 0;
+        for (int i = 0; i < count; i++)
+            longest = Math.max(longest, lengths[i]);
+        return OptionalInt.of(longest);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import java.util.OptionalInt;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Splits the context window of the model between the prompt, including the conversation history,
+ * and the response.
+ */
+@FunctionalInterface
+public interface TokenBudgetPolicy {
+
+    /** The largest configurable response token reserve, i.e. the largest context window of the current models. */
+    int MAX_RESPONSE_TOKEN_RESERVE = 32768;
+
+    /**
+     * The number of tokens of the context window left unused by the response, absorbing the
+     * inaccuracy of the locally counted prompt tokens.
+     */
+    int RESPONSE_TOKEN_SAFETY_MARGIN = 32;
+
+    /** The default policy, reserving 1/3 of the context window for the response. */
+    TokenBudgetPolicy DEFAULT = ratio(1.0/3);
+
+    /**
+     * Gives the number of tokens reserved for the response.
+     *
+     * @param maxTokens the context window size of the model
+     * @return the number of tokens reserved for the response
+     */
+    int getResponseTokenReserve(int maxTokens);
+
+    /**
+     * Gives the number of tokens available for the prompt, including the conversation history.
+     *
+     * @param maxTokens the context window size of the model
+     * @return the maximum number of tokens of the prompt
+     */
+    default int getPromptTokenLimit(int maxTokens) {
+        return maxTokens - getResponseTokenReserve(maxTokens);
+    }
+
+    /**
+     * Gives the maximum number of tokens of the response to the prompt, sent as {@code max_tokens}.
+     * By default, the reserve is only the least room kept for the response, which may take all the
+     * room left by the prompt in the context window.
+     *
+     * @param maxTokens the context window size of the model
+     * @param promptTokens the number of tokens of the prompt
+     * @return the maximum number of tokens of the response, at least 1
+     */
+    default int getMaxResponseTokens(int maxTokens, int promptTokens) {
+        return Math.max(1, maxTokens - promptTokens - RESPONSE_TOKEN_SAFETY_MARGIN);
+    }
+
+    static TokenBudgetPolicy ratio(double responseRatio) {
+        if (responseRatio < 0.0 || responseRatio > 1.0)
+            throw new IllegalArgumentException("Response ratio out of range: " + responseRatio);
+
+        return maxTokens -> (int) Math.ceil(maxTokens * responseRatio);
+    }
+
+    /**
+     * Reserves the given number of tokens for the response, which is also limited to it.
+     *
+     * @param responseTokens the number of tokens of the response
+     */
+    static TokenBudgetPolicy fixed(int responseTokens) {
+        if (responseTokens < 0)
+            throw new IllegalArgumentException("Negative response token reserve: " + responseTokens);
+
+        return new TokenBudgetPolicy() {
+            @Override
+            public int getResponseTokenReserve(int maxTokens) {
+                return Math.min(responseTokens, maxTokens);
+            }
+
+            @Override
+            public int getMaxResponseTokens(int maxTokens, int promptTokens) {
+                return Math.max(1, Math.min(getResponseTokenReserve(maxTokens), maxTokens - promptTokens - RESPONSE_TOKEN_SAFETY_MARGIN));
+            }
+        };
+    }
+
+    /**
+     * Reserves for the response a margin above the longest of the recently observed responses, but at
+     * least the given minimum and at most half of the context window, and limits the response to it.
+     * Falls back to the default policy until any responses are observed.
+     *
+     * @param history the recently observed response lengths
+     * @param minResponseTokens the minimum number of tokens reserved for the response
+     */
+    static TokenBudgetPolicy adaptive(ResponseLengthHistory history, int minResponseTokens) {
+        requireNonNull(history, "history");
+        return new TokenBudgetPolicy() {
+            @Override
+            public int getResponseTokenReserve(int maxTokens) {
+                OptionalInt longest = history.getLongest();
+                if (longest.isEmpty())
+                    return DEFAULT.getResponseTokenReserve(maxTokens);
+
+                int reserve = Math.max(minResponseTokens, longest.getAsInt() + longest.getAsInt()/4);
+                return Math.min(reserve, maxTokens/2);
+            }
+
+            @Override
+            public int getMaxResponseTokens(int maxTokens, int promptTokens) {
+                int maxResponseTokens = DEFAULT.getMaxResponseTokens(maxTokens, promptTokens);
+                if (history.getLongest().isEmpty())
+                    return maxResponseTokens;
+
+                return Math.max(1, Math.min(getResponseTokenReserve(maxTokens), maxResponseTokens));
+            }
+        };
+    }
+
+    enum Kind {
+        RATIO, FIXED, ADAPTIVE
+    }
+}
@@ -4,6 +4,7 @@
  */
 package com.didalgo.intellij.chatgpt.core;
 
+import com.didalgo.intellij.chatgpt.text.IncrementalMarkdownRenderer;
 import com.didalgo.intellij.chatgpt.text.TextFragment;
 import com.theokanning.openai.completion.chat.ChatMessage;
 
@@ -12,13 +13,21 @@ import java.util.List;
 public class ChatCompletionParser {
 
     public static TextFragment parseGPT35TurboWithStream(List<ChatMessage> assistantResponses) {
+        TextFragment parseResult = TextFragment.of(getAssistantMessage(assistantResponses));
+        parseResult.toHtml(); // pre-compute and cache HTML content in the current thread
+        return parseResult;
+    }
+
+    public static TextFragment parseGPT35TurboWithStream(List<ChatMessage> assistantResponses, IncrementalMarkdownRenderer renderer) {
+        // HTML content is pre-computed in the current thread, re-rendering only the blocks changed since the last call
+        return renderer.render(getAssistantMessage(assistantResponses));
+    }
+
+    private static String getAssistantMessage(List<ChatMessage> assistantResponses) {
         String assistantMessage = assistantResponses.isEmpty() ? null : assistantResponses.get(0).getContent();
         if (assistantMessage == null) {
             assistantMessage = "";
         }
-
-        TextFragment parseResult = TextFragment.of(assistantMessage);
-        parseResult.toHtml(); // pre-compute and cache HTML content in the current thread
-        return parseResult;
+        return assistantMessage;
     }
 }
@@ -20,6 +20,9 @@ public final class ChatCompletionRequestProvider {
         ctx.addChatMessage(userMessage);
         var model = ctx.getModelType();
         var config = OpenAISettingsState.getInstance().getConfigurationPage(ctx.getModelPage());
+        var messages = ctx.getChatMessages(model, userMessage);
+        int promptTokens = TokenCountCache.getInstance().countTokens(model, messages);
+        int maxResponseTokens = config.getTokenBudgetPolicy().getMaxResponseTokens(model.maxTokens(), promptTokens);
 
         return ChatCompletionRequest
                 .builder()
@@ -27,7 +30,8 @@ public final class ChatCompletionRequestProvider {
                 .temperature(config.getTemperature())
                 .topP(config.getTopP())
                 .model(model.modelName())
-                .messages(ctx.getChatMessages(model, userMessage))
+                .messages(messages)
+                .maxTokens(maxResponseTokens)
                 .logitBias(new TreeMap<>());
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pair of token buckets, limiting requests per minute and tokens per minute sent to a single endpoint.
+ * <p>
+ * Capacity is reserved in advance: a reservation, which cannot be satisfied immediately, puts the
+ * buckets into debt and returns the time to wait until the debt is paid off, so that the subsequent
+ * reservations queue up behind it. A bucket with no limit set never delays anything.
+ */
+public final class RateLimiter {
+
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Bucket requests = new Bucket();
+    private final Bucket tokens = new Bucket();
+
+    /**
+     * Sets the limits of this rate limiter, usually as reported by the server.
+     *
+     * @param requestsPerMinute the requests per minute limit, or non-positive to keep the current one
+     * @param tokensPerMinute the tokens per minute limit, or non-positive to keep the current one
+     * @param nowNanos the current time, in the {@link System#nanoTime()} scale
+     */
+    public synchronized void setLimits(long requestsPerMinute, long tokensPerMinute, long nowNanos) {
+        requests.setLimit(requestsPerMinute, nowNanos);
+        tokens.setLimit(tokensPerMinute, nowNanos);
+    }
+
+    /**
+     * Lowers the available capacity to the remaining amounts reported by the server, which also counts
+     * the requests not sent through this rate limiter.
+     *
+     * @param remainingRequests the remaining requests, or negative if unknown
+     * @param remainingTokens the remaining tokens, or negative if unknown
+     * @param nowNanos the current time, in the {@link System#nanoTime()} scale
+     */
+    public synchronized void setRemaining(long remainingRequests, long remainingTokens, long nowNanos) {
+        requests.setRemaining(remainingRequests, nowNanos);
+        tokens.setRemaining(remainingTokens, nowNanos);
+    }
+
+    /**
+     * Reserves capacity for a single request consuming the given number of tokens.
+     *
+     * @param tokenCount the number of tokens, counted against the tokens per minute limit
+     * @param nowNanos the current time, in the {@link System#nanoTime()} scale
+     * @return the number of nanoseconds to wait before sending the request
+     */
+    public synchronized long reserve(int tokenCount, long nowNanos) {
+        long waitNanos = Math.max(requests.reserve(1, nowNanos), tokens.reserve(tokenCount, nowNanos));
+        return Math.max(0, waitNanos);
+    }
+
+    private static final class Bucket {
+        private long limit;
+        private double level;
+        private long lastRefillNanos;
+
+        void setLimit(long newLimit, long nowNanos) {
+            if (newLimit <= 0)
+                return;
+
+            refill(nowNanos);
+            level = (limit <= 0)? newLimit : Math.min(level, newLimit);
+            limit = newLimit;
+        }
+
+        void setRemaining(long remaining, long nowNanos) {
+            if (remaining >= 0 && limit > 0) {
+                refill(nowNanos);
+                level = Math.min(level, remaining);
+            }
+        }
+
+        long reserve(long amount, long nowNanos) {
+            if (limit <= 0)
+                return 0;
+
+            refill(nowNanos);
+            amount = Math.min(amount, limit); // oversized requests wait for the full bucket only
+            long waitNanos = (level >= amount) ? 0 : (long) Math.ceil((amount - level) * MINUTE_NANOS / limit);
+            level -= amount;
+            return waitNanos;
+        }
+
+        private void refill(long nowNanos) {
+            long elapsedNanos = nowNanos - lastRefillNanos;
+            if (limit > 0 && elapsedNanos > 0)
+                level = Math.min(limit, level + (double) elapsedNanos * limit / MINUTE_NANOS);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
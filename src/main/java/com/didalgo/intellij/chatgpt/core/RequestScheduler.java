@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.HttpUrl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Delays requests sent to the same model of the same endpoint host, from all projects and actions, so
+ * that they stay within the requests per minute and tokens per minute limits, instead of being rejected
+ * with HTTP 429. The limits, which are imposed per model, are learned from the rate limit headers of
+ * the responses.
+ */
+@Service
+public final class RequestScheduler {
+
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+    public static RequestScheduler getInstance() {
+        return ApplicationManager.getApplication().getService(RequestScheduler.class);
+    }
+
+    /**
+     * Subscribes to the given request flow, once the endpoint has the capacity for the request.
+     *
+     * @param endpointUrl the endpoint URL
+     * @param model the model name of the request
+     * @param tokenCount the number of tokens, counted against the tokens per minute limit, which
+     *                   includes both the prompt and the maximum number of response tokens
+     * @param request the supplier of the request flow
+     * @return the flow delayed as needed
+     */
+    public <T> Flowable<T> schedule(String endpointUrl, String model, int tokenCount, Supplier<Flowable<T>> request) {
+        return Flowable.defer(() -> {
+            long waitNanos = getRateLimiter(endpointUrl, model).reserve(tokenCount, System.nanoTime());
+            if (waitNanos <= 0)
+                return request.get();
+
+            return Flowable.timer(waitNanos, TimeUnit.NANOSECONDS, Schedulers.io())
+                    .flatMap(__ -> request.get());
+        });
+    }
+
+    /**
+     * Gives the rate limiter of the model of the endpoint host.
+     *
+     * @param endpointUrl the endpoint URL
+     * @param model the model name, or {@code null} if unknown
+     * @return the rate limiter
+     */
+    public RateLimiter getRateLimiter(String endpointUrl, String model) {
+        String key = (model == null)? getHost(endpointUrl) : getHost(endpointUrl) + '/' + model;
+        return rateLimiters.computeIfAbsent(key, __ -> new RateLimiter());
+    }
+
+    private static String getHost(String endpointUrl) {
+        HttpUrl url = HttpUrl.parse(endpointUrl);
+        return (url == null)? endpointUrl : url.host();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * On-disk LRU cache of chat completion responses, keyed by the hash of the request, so that
+ * repeated prompts, such as re-running an editor action on the same selection, are answered
+ * instantly and at no cost.
+ * <p>
+ * Each response is stored in a separate file, named after the request hash. The recency of use is
+ * kept in the file modification times, so that it survives IDE restarts.
+ */
+@Service
+public final class ResponseCache {
+
+    private static final Logger LOG = Logger.getInstance(ResponseCache.class);
+
+    public static final long DEFAULT_MAX_SIZE = 32L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final String FILE_EXTENSION = ".txt";
+
+    public static ResponseCache getInstance() {
+        return ApplicationManager.getApplication().getService(ResponseCache.class);
+    }
+
+    private final Path directory;
+    private final long maxSize;
+    private final int maxEntries;
+    /** File sizes, in access order, loaded from the directory lazily. */
+    private LinkedHashMap<String, Long> entries;
+    private long size;
+
+    public ResponseCache() {
+        this(Path.of(PathManager.getSystemPath(), "didalgo-chatgpt", "response-cache"), DEFAULT_MAX_SIZE, DEFAULT_MAX_ENTRIES);
+    }
+
+    ResponseCache(Path directory, long maxSize, int maxEntries) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Tells whether the response to the given request may be served from the cache. Responses are
+     * deterministic only at zero temperature, others are cached only when explicitly allowed.
+     *
+     * @param request the request
+     * @param includeNonDeterministic whether to cache responses to requests with non-zero temperature
+     * @return {@code true} if the request is cacheable
+     */
+    public static boolean isCacheable(ChatCompletionRequest request, boolean includeNonDeterministic) {
+        boolean singleChoice = request.getN() == null || request.getN() == 1;
+        boolean deterministic = request.getTemperature() != null && request.getTemperature() == 0.0;
+        return singleChoice && (deterministic || includeNonDeterministic);
+    }
+
+    /**
+     * Computes the cache key of the given request, from the endpoint it is sent to and all of its
+     * parameters affecting the response, so that the same model name served by different backends,
+     * such as OpenAI and an Azure deployment, doesn't share the responses.
+     * <p>
+     * The {@code max_tokens} is left out, as it's computed per request by the token budget policy,
+     * which changes it on almost every request with the adaptive policy, while it only limits the
+     * length of the response.
+     *
+     * @param endpointUrl the URL of the endpoint the request is sent to
+     * @param request the request
+     * @return the cache key
+     */
+    public static String keyOf(String endpointUrl, ChatCompletionRequest request) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            update(digest, endpointUrl);
+            update(digest, request.getModel());
+            update(digest, Objects.toString(request.getTemperature()));
+            update(digest, Objects.toString(request.getTopP()));
+            update(digest, Objects.toString(request.getPresencePenalty()));
+            update(digest, Objects.toString(request.getFrequencyPenalty()));
+            update(digest, Objects.toString(request.getStop()));
+            for (ChatMessage message : request.getMessages()) {
+                update(digest, message.getRole());
+                update(digest, message.getName());
+                update(digest, message.getContent());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null)
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    public synchronized Optional<String> get(String key) {
+        if (loadEntries().get(key) == null)
+            return Optional.empty();
+
+        Path file = fileOf(key);
+        try {
+            String response = Files.readString(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(response);
+        } catch (IOException e) {
+            LOG.debug("Unable to read cached response " + file, e);
+            remove(key);
+            return Optional.empty();
+        }
+    }
+
+    public synchronized void put(String key, String response) {
+        var entries = loadEntries();
+        Path file = fileOf(key);
+        try {
+            Files.createDirectories(directory);
+            Path tempFile = Files.createTempFile(directory, key, ".tmp");
+            Files.writeString(tempFile, response);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long fileSize = Files.size(file);
+            Long previousSize = entries.put(key, fileSize);
+            size += fileSize - ((previousSize == null)? 0 : previousSize);
+        } catch (IOException e) {
+            LOG.warn("Unable to store cached response " + file, e);
+            return;
+        }
+
+        var eldest = entries.entrySet().iterator();
+        while ((size > maxSize || entries.size() > maxEntries) && eldest.hasNext()) {
+            var eldestEntry = eldest.next();
+            if (eldestEntry.getKey().equals(key))
+                break;
+            size -= eldestEntry.getValue();
+            eldest.remove();
+            deleteQuietly(fileOf(eldestEntry.getKey()));
+        }
+    }
+
+    public synchronized void clear() {
+        loadEntries().keySet().forEach(key -> deleteQuietly(fileOf(key)));
+        entries.clear();
+        size = 0;
+    }
+
+    private void remove(String key) {
+        Long removedSize = loadEntries().remove(key);
+        if (removedSize != null)
+            size -= removedSize;
+        deleteQuietly(fileOf(key));
+    }
+
+    private LinkedHashMap<String, Long> loadEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<>(64, 0.75f, true);
+            if (Files.isDirectory(directory)) {
+                try (Stream<Path> files = Files.list(directory)) {
+                    files.filter(file -> file.getFileName().toString().endsWith(FILE_EXTENSION))
+                            .map(ResponseCache::toCacheFile)
+                            .sorted(Comparator.comparing(CacheFile::lastModified))
+                            .forEach(file -> {
+                                entries.put(file.key(), file.size());
+                                size += file.size();
+                            });
+                } catch (IOException | UncheckedIOException e) {
+                    LOG.warn("Unable to load response cache from " + directory, e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private record CacheFile(String key, long size, FileTime lastModified) { }
+
+    private static CacheFile toCacheFile(Path file) {
+        try {
+            String fileName = file.getFileName().toString();
+            return new CacheFile(fileName.substring(0, fileName.length() - FILE_EXTENSION.length()),
+                    Files.size(file), Files.getLastModifiedTime(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key + FILE_EXTENSION);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.debug("Unable to delete cached response " + file, e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import com.theokanning.openai.OpenAiHttpException;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.Headers;
+import okhttp3.internal.http2.StreamResetException;
+import retrofit2.HttpException;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Resubscribes to the chat completion flow failed with a transient error, such as HTTP 429, 5xx or
+ * a reset stream, after an exponential backoff or the delay requested by the server with the
+ * {@code Retry-After} header. A flow is retried only until it emits its first item, so that the
+ * response already shown to the user is never repeated.
+ * <p>
+ * Optionally, when no item arrives within the hedging delay, a second, hedged request is started, and
+ * the items are taken from whichever of the two requests responds first, while the other is cancelled.
+ * <p>
+ * The retried and hedged requests are subscribed to on the timer threads of the {@linkplain Schedulers#io()
+ * I/O scheduler}, as the non-streaming requests block the subscribing thread for the whole HTTP call.
+ * They make no rate limit reservations of their own, but share the one made for the logical request
+ * by the {@link RequestScheduler} the policy is applied within.
+ *
+ * @param maxRetries the maximum number of retries, {@code 0} to disable retrying
+ * @param initialBackoff the delay before the first retry, doubled on each subsequent retry
+ * @param maxBackoff the upper limit of the delay between retries; a longer delay requested by the server
+ *                   fails the flow instead of retrying early
+ * @param hedgeDelay the delay after which the hedged request is started, {@link Duration#ZERO} to disable hedging
+ */
+public record RetryPolicy(int maxRetries, Duration initialBackoff, Duration maxBackoff, Duration hedgeDelay) {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(2, Duration.ofSeconds(1), Duration.ofSeconds(20), Duration.ZERO);
+
+    public static final RetryPolicy NONE = new RetryPolicy(0, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+
+    public RetryPolicy {
+        if (maxRetries < 0)
+            throw new IllegalArgumentException("Negative maxRetries: " + maxRetries);
+    }
+
+    public <T> Flowable<T> apply(Supplier<Flowable<T>> source) {
+        return apply(source, Schedulers.io());
+    }
+
+    <T> Flowable<T> apply(Supplier<Flowable<T>> source, Scheduler scheduler) {
+        return Flowable.defer(() -> {
+            var emitted = new AtomicBoolean();
+            var attempts = new AtomicInteger();
+            return hedged(source, scheduler)
+                    .doOnNext(__ -> emitted.set(true))
+                    .retryWhen(errors -> errors.flatMap(error -> {
+                        int attempt = attempts.getAndIncrement();
+                        if (emitted.get() || attempt >= maxRetries || !isRetryable(error))
+                            return Flowable.error(error);
+
+                        var backoff = getBackoff(attempt, error);
+                        if (backoff.isEmpty())
+                            return Flowable.error(error);
+                        return Flowable.timer(backoff.get().toMillis(), TimeUnit.MILLISECONDS, scheduler);
+                    }));
+        });
+    }
+
+    private <T> Flowable<T> hedged(Supplier<Flowable<T>> source, Scheduler scheduler) {
+        if (hedgeDelay.isZero() || hedgeDelay.isNegative())
+            return Flowable.defer(source::get);
+
+        // a failed hedge must not win over the primary request still in progress
+        Flowable<T> hedge = Flowable.timer(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS, scheduler)
+                .flatMap(__ -> source.get())
+                .onErrorResumeNext(Flowable.never());
+        return Flowable.amb(List.of(Flowable.defer(source::get), hedge));
+    }
+
+    /**
+     * Tells whether the given failure is transient, so that repeating the request may succeed.
+     *
+     * @param error the failure
+     * @return {@code true} if the request can be retried
+     */
+    public boolean isRetryable(Throwable error) {
+        if (error instanceof OpenAiHttpException e)
+            return isRetryableStatus(e.statusCode) && !"insufficient_quota".equals(e.code);
+        if (error instanceof HttpException e)
+            return isRetryableStatus(e.code());
+
+        return error instanceof StreamResetException
+                || error instanceof ConnectException
+                || error instanceof InterruptedIOException;
+    }
+
+    private static boolean isRetryableStatus(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Gives the delay before the retry following the given failure. The exponential backoff is limited
+     * to {@link #maxBackoff()}, while the delay requested by the server is never shortened, as retrying
+     * earlier would only fail again.
+     *
+     * @param attempt the 0-based number of the retry
+     * @param error the failure
+     * @return the delay, never greater than {@link #maxBackoff()}, or empty if the server requested
+     *         a longer delay, and the request should not be retried
+     */
+    public Optional<Duration> getBackoff(int attempt, Throwable error) {
+        var retryAfter = getRetryAfter(error);
+        if (retryAfter.isPresent())
+            return retryAfter.filter(delay -> delay.compareTo(maxBackoff) <= 0);
+
+        long millis = initialBackoff.toMillis() << Math.min(attempt, 20);
+        // full jitter in the upper half, so that concurrent clients don't retry in lockstep
+        Duration backoff = Duration.ofMillis(millis/2 + ThreadLocalRandom.current().nextLong(millis/2 + 1));
+        return Optional.of((backoff.compareTo(maxBackoff) > 0)? maxBackoff : backoff);
+    }
+
+    static Optional<Duration> getRetryAfter(Throwable error) {
+        Throwable cause = (error instanceof OpenAiHttpException)? error.getCause() : error;
+        if (!(cause instanceof HttpException httpException) || httpException.response() == null)
+            return Optional.empty();
+
+        return parseRetryAfter(httpException.response().headers());
+    }
+
+    static Optional<Duration> parseRetryAfter(Headers headers) {
+        try {
+            String retryAfterMs = headers.get("retry-after-ms");
+            if (retryAfterMs != null)
+                return Optional.of(Duration.ofMillis((long) Double.parseDouble(retryAfterMs.trim())));
+
+            String retryAfter = headers.get("Retry-After");
+            if (retryAfter == null)
+                return Optional.empty();
+            retryAfter = retryAfter.trim();
+            if (!retryAfter.isEmpty() && Character.isDigit(retryAfter.charAt(0)))
+                return Optional.of(Duration.ofMillis((long) (Double.parseDouble(retryAfter) * 1000)));
+
+            var date = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+            var delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+            return Optional.of(delay.isNegative()? Duration.ZERO : delay);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -6,15 +6,28 @@ package com.didalgo.intellij.chatgpt.core;
 
 import com.intellij.openapi.project.Project;
 import com.didalgo.intellij.chatgpt.settings.OpenAISettingsState;
+import com.didalgo.intellij.chatgpt.spi.OpenAiHttpClientFactory;
 import com.didalgo.intellij.chatgpt.ui.action.editor.ActionsUtil;
 import com.intellij.openapi.startup.StartupActivity;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 public class StartUpActivity implements StartupActivity {
 
     @Override
     public void runActivity(@NotNull Project project) {
-        OpenAISettingsState.getInstance();
+        var settings = OpenAISettingsState.getInstance();
         ActionsUtil.refreshActions();
+        if (settings.isEnableConnectionWarmUp())
+            OpenAiHttpClientFactory.getInstance().warmUp(getConfiguredEndpoints(settings));
+    }
+
+    private static List<String> getConfiguredEndpoints(OpenAISettingsState settings) {
+        return Stream.of(settings.getGpt35Config(), settings.getGpt4Config())
+                .filter(config -> !config.getApiKeyMasked().isEmpty())
+                .map(OpenAISettingsState.OpenAIConfig::getApiEndpointUrl)
+                .toList();
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import com.didalgo.gpt3.ModelType;
+import com.didalgo.intellij.chatgpt.chat.ChatMessageUtils;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Bounded LRU cache of token counts, keyed by the model type and the hash of the counted content,
+ * so that texts counted repeatedly, such as context snippets and conversation history, are tokenized
+ * only once.
+ */
+@Service
+public final class TokenCountCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    public static TokenCountCache getInstance() {
+        return ApplicationManager.getApplication().getService(TokenCountCache.class);
+    }
+
+    private final int maxEntries;
+    private final Map<Key, Integer> tokenCounts;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public TokenCountCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    TokenCountCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.tokenCounts = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+                boolean evict = size() > TokenCountCache.this.maxEntries;
+                if (evict)
+                    evictionCount.increment();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Counts tokens of the given text, as encoded by the tokenizer of the given model.
+     *
+     * @param model the model type
+     * @param text the text
+     * @return the token count
+     */
+    public int countTokens(ModelType model, CharSequence text) {
+        var key = new Key(model, false, text.length(), hash(FNV_OFFSET_BASIS, text));
+        return getOrCount(key, () -> model.getTokenizer().encode(text.toString()).size());
+    }
+
+    /**
+     * Counts tokens contributed by the given message to the chat completion request of the given model.
+     *
+     * @param model the model type
+     * @param message the chat message
+     * @return the token count, excluding the per-request overhead
+     * @see ChatMessageUtils#countTokens(ChatMessage, com.didalgo.gpt3.GPT3Tokenizer, com.didalgo.gpt3.ChatFormatDescriptor)
+     */
+    public int countTokens(ModelType model, ChatMessage message) {
+        String role = StringUtils.defaultString(message.getRole());
+        String content = StringUtils.defaultString(message.getContent());
+        var key = new Key(model, true, role.length() + content.length(), hash(hash(hash(FNV_OFFSET_BASIS, role), "\0"), content));
+        return getOrCount(key, () -> ChatMessageUtils.countTokens(message, model.getTokenizer(), model.getChatFormatDescriptor()));
+    }
+
+    /**
+     * Counts tokens of the chat completion request of the given model, consisting of the given messages.
+     *
+     * @param model the model type
+     * @param messages the chat messages
+     * @return the token count, including the per-request overhead
+     */
+    public int countTokens(ModelType model, List<ChatMessage> messages) {
+        int tokenCount = ChatMessageUtils.countTokens(List.of(), model.getTokenizer(), model.getChatFormatDescriptor());
+        for (ChatMessage message : messages)
+            tokenCount += countTokens(model, message);
+        return tokenCount;
+    }
+
+    private int getOrCount(Key key, IntSupplier tokenCounter) {
+        synchronized (tokenCounts) {
+            Integer count = tokenCounts.get(key);
+            if (count != null) {
+                hitCount.increment();
+                return count;
+            }
+        }
+        missCount.increment();
+        int count = tokenCounter.getAsInt(); // tokenize outside the lock
+        synchronized (tokenCounts) {
+            tokenCounts.put(key, count);
+        }
+        return count;
+    }
+
+    public Statistics getStatistics() {
+        int size;
+        synchronized (tokenCounts) {
+            size = tokenCounts.size();
+        }
+        return new Statistics(hitCount.sum(), missCount.sum(), evictionCount.sum(), size);
+    }
+
+    public void clear() {
+        synchronized (tokenCounts) {
+            tokenCounts.clear();
+        }
+    }
+
+    public record Statistics(long hitCount, long missCount, long evictionCount, int size) { }
+
+    private record Key(ModelType model, boolean message, int length, long hash) { }
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Continues the 64-bit FNV-1a hash of UTF-16 characters with the given text. */
+    private static long hash(long hash, CharSequence text) {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char ch = text.charAt(i);
+            hash = (hash ^ (ch & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (ch >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
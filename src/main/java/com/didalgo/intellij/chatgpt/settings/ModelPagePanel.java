@@ -2,6 +2,7 @@ package com.didalgo.intellij.chatgpt.settings;
 
 import com.didalgo.intellij.chatgpt.ChatGptBundle;
 import com.didalgo.intellij.chatgpt.OpenAIServiceHolder;
+import com.didalgo.intellij.chatgpt.chat.TokenBudgetPolicy;
 import com.intellij.openapi.options.Configurable;
 import com.intellij.ui.SimpleTextAttributes;
 import com.intellij.ui.TextFieldWithHistory;
@@ -35,6 +36,9 @@ public abstract class ModelPagePanel implements Configurable {
     protected JLabel apiEndpointLabel;
     private JSpinner temperatureSpinner;
     private JSpinner topPSpinner;
+    private JComboBox<TokenBudgetPolicy.Kind> tokenBudgetPolicyCombobox;
+    private JSpinner responseTokenRatioSpinner;
+    private JSpinner responseTokenReserveSpinner;
 
     public ModelPagePanel() {
         init();
@@ -53,6 +57,10 @@ public abstract class ModelPagePanel implements Configurable {
         enableCustomizeServerOptions(false);
         temperatureSpinner.setModel(new SpinnerNumberModel(0.4, 0.0, 2.0, 0.05));
         topPSpinner.setModel(new SpinnerNumberModel(0.95, 0.0, 1.0, 0.01));
+        tokenBudgetPolicyCombobox.setModel(new DefaultComboBoxModel<>(TokenBudgetPolicy.Kind.values()));
+        tokenBudgetPolicyCombobox.addItemListener(e -> updateTokenBudgetOptions());
+        responseTokenRatioSpinner.setModel(new SpinnerNumberModel(1.0/3, 0.05, 0.95, 0.05));
+        responseTokenReserveSpinner.setModel(new SpinnerNumberModel(1024, 16, TokenBudgetPolicy.MAX_RESPONSE_TOKEN_RESERVE, 64));
         initHelp();
     }
 
@@ -64,6 +72,12 @@ public abstract class ModelPagePanel implements Configurable {
         apiEndpointLabel.setEnabled(false);
     }
 
+    private void updateTokenBudgetOptions() {
+        var kind = tokenBudgetPolicyCombobox.getSelectedItem();
+        responseTokenRatioSpinner.setEnabled(kind == TokenBudgetPolicy.Kind.RATIO);
+        responseTokenReserveSpinner.setEnabled(kind != TokenBudgetPolicy.Kind.RATIO);
+    }
+
     protected abstract OpenAISettingsState.OpenAIConfig getModelPageConfig(OpenAISettingsState state);
 
     @Override
@@ -74,6 +88,10 @@ public abstract class ModelPagePanel implements Configurable {
         comboCombobox.setSelectedItem(config.getModelName());
         temperatureSpinner.setValue(config.getTemperature());
         topPSpinner.setValue(config.getTopP());
+        tokenBudgetPolicyCombobox.setSelectedItem(config.getTokenBudgetPolicyKind());
+        responseTokenRatioSpinner.setValue(config.getResponseTokenRatio());
+        responseTokenReserveSpinner.setValue(config.getResponseTokenReserve());
+        updateTokenBudgetOptions();
         enableContextCheckBox.setSelected(config.isEnableContext());
         enableTokenConsumptionCheckBox.setSelected(config.isEnableTokenConsumption());
         enableStreamResponseCheckBox.setSelected(config.isEnableStreamResponse());
@@ -96,6 +114,9 @@ public abstract class ModelPagePanel implements Configurable {
                 !config.getModelName().equals(comboCombobox.getSelectedItem()) ||
                 !Double.valueOf(config.getTemperature()).equals(temperatureSpinner.getValue()) ||
                 !Double.valueOf(config.getTopP()).equals(topPSpinner.getValue()) ||
+                config.getTokenBudgetPolicyKind() != tokenBudgetPolicyCombobox.getSelectedItem() ||
+                !Double.valueOf(config.getResponseTokenRatio()).equals(responseTokenRatioSpinner.getValue()) ||
+                !Integer.valueOf(config.getResponseTokenReserve()).equals(responseTokenReserveSpinner.getValue()) ||
                 config.isEnableContext() != enableContextCheckBox.isSelected() ||
                 config.isEnableTokenConsumption() != enableTokenConsumptionCheckBox.isSelected() ||
                 config.isEnableStreamResponse() != enableStreamResponseCheckBox.isSelected() ||
@@ -115,6 +136,9 @@ public abstract class ModelPagePanel implements Configurable {
         config.setModelName(comboCombobox.getSelectedItem().toString());
         config.setTemperature((double) temperatureSpinner.getValue());
         config.setTopP((double) topPSpinner.getValue());
+        config.setTokenBudgetPolicyKind((TokenBudgetPolicy.Kind) tokenBudgetPolicyCombobox.getSelectedItem());
+        config.setResponseTokenRatio((double) responseTokenRatioSpinner.getValue());
+        config.setResponseTokenReserve((int) responseTokenReserveSpinner.getValue());
         config.setEnableContext(enableContextCheckBox.isSelected());
         config.setEnableTokenConsumption(enableTokenConsumptionCheckBox.isSelected());
         config.setEnableStreamResponse(enableStreamResponseCheckBox.isSelected());
@@ -27,6 +27,12 @@ public class OpenAISettingsPanel implements Configurable {
     private JPanel myMainPanel;
     private JPanel connectionTitledBorderBox;
     private JBTextField readTimeoutField;
+    private JCheckBox enableConnectionWarmUpCheckBox;
+    private JSpinner requestLogSamplingRateSpinner;
+    private JSpinner maxRetriesSpinner;
+    private JSpinner hedgeDelaySpinner;
+    private JCheckBox enableResponseCacheCheckBox;
+    private JCheckBox cacheNonDeterministicResponsesCheckBox;
     private JPanel proxyTitledBorderBox;
     private JCheckBox enableAvatarCheckBox;
     private JPanel contentTitledBorderBox;
@@ -50,6 +56,10 @@ public class OpenAISettingsPanel implements Configurable {
 
     private void init() {
         readTimeoutField.getEmptyText().setText(ChatGptBundle.message("ui.setting.connection.read_timeout.empty_text"));
+        requestLogSamplingRateSpinner.setModel(new SpinnerNumberModel(0.0, 0.0, 1.0, 0.05));
+        maxRetriesSpinner.setModel(new SpinnerNumberModel(2, 0, 10, 1));
+        hedgeDelaySpinner.setModel(new SpinnerNumberModel(0, 0, 60000, 500));
+        enableResponseCacheCheckBox.addItemListener(e -> cacheNonDeterministicResponsesCheckBox.setEnabled(enableResponseCacheCheckBox.isSelected()));
 
         firstCombobox.setModel(new DefaultComboBoxModel<>(comboboxItemsString));
         secondCombobox.setModel(new DefaultComboBoxModel<>(comboboxItemsString));
@@ -59,6 +69,13 @@ public class OpenAISettingsPanel implements Configurable {
     public void reset() {
         OpenAISettingsState state = OpenAISettingsState.getInstance();
         readTimeoutField.setText(state.getReadTimeout());
+        enableConnectionWarmUpCheckBox.setSelected(state.isEnableConnectionWarmUp());
+        requestLogSamplingRateSpinner.setValue(state.getRequestLogSamplingRate());
+        maxRetriesSpinner.setValue(state.getMaxRetries());
+        hedgeDelaySpinner.setValue(state.getHedgeDelayMillis());
+        enableResponseCacheCheckBox.setSelected(state.isEnableResponseCache());
+        cacheNonDeterministicResponsesCheckBox.setSelected(state.isCacheNonDeterministicResponses());
+        cacheNonDeterministicResponsesCheckBox.setEnabled(state.isEnableResponseCache());
         enableAvatarCheckBox.setSelected(state.isEnableAvatar());
         firstCombobox.setSelectedItem(state.contentOrder.get(1));
         secondCombobox.setSelectedItem(state.contentOrder.get(2));
@@ -83,6 +100,12 @@ public class OpenAISettingsPanel implements Configurable {
 
         return
                 !StringUtil.equals(state.getReadTimeout(), readTimeoutField.getText())
+                || state.isEnableConnectionWarmUp() != enableConnectionWarmUpCheckBox.isSelected()
+                || !Double.valueOf(state.getRequestLogSamplingRate()).equals(requestLogSamplingRateSpinner.getValue())
+                || !Integer.valueOf(state.getMaxRetries()).equals(maxRetriesSpinner.getValue())
+                || !Integer.valueOf(state.getHedgeDelayMillis()).equals(hedgeDelaySpinner.getValue())
+                || state.isEnableResponseCache() != enableResponseCacheCheckBox.isSelected()
+                || state.isCacheNonDeterministicResponses() != cacheNonDeterministicResponsesCheckBox.isSelected()
                 || !state.isEnableAvatar() == enableAvatarCheckBox.isSelected()
                 || !StringUtil.equals(state.contentOrder.get(1), (String)firstCombobox.getSelectedItem())
                 || !StringUtil.equals(state.contentOrder.get(2), (String)secondCombobox.getSelectedItem())
@@ -96,6 +119,12 @@ public class OpenAISettingsPanel implements Configurable {
 
         boolean readTimeoutIsNumber = StringUtils.isNumeric(readTimeoutField.getText());
         state.setReadTimeout(!readTimeoutIsNumber ? "50000" : readTimeoutField.getText());
+        state.setEnableConnectionWarmUp(enableConnectionWarmUpCheckBox.isSelected());
+        state.setRequestLogSamplingRate((double) requestLogSamplingRateSpinner.getValue());
+        state.setMaxRetries((int) maxRetriesSpinner.getValue());
+        state.setHedgeDelayMillis((int) hedgeDelaySpinner.getValue());
+        state.setEnableResponseCache(enableResponseCacheCheckBox.isSelected());
+        state.setCacheNonDeterministicResponses(cacheNonDeterministicResponsesCheckBox.isSelected());
         state.setEnableAvatar(enableAvatarCheckBox.isSelected());
 
         String firstSelected = (String) firstCombobox.getSelectedItem();
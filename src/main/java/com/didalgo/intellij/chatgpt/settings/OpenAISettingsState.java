@@ -8,6 +8,9 @@ import com.didalgo.gpt3.ModelType;
 import com.didalgo.intellij.chatgpt.ChatGptToolWindowFactory;
 import com.didalgo.intellij.chatgpt.ModelPage;
 import com.didalgo.intellij.chatgpt.chat.ConfigurationPage;
+import com.didalgo.intellij.chatgpt.chat.ResponseLengthHistory;
+import com.didalgo.intellij.chatgpt.chat.TokenBudgetPolicy;
+import com.didalgo.intellij.chatgpt.core.RetryPolicy;
 import com.intellij.credentialStore.CredentialAttributes;
 import com.intellij.credentialStore.CredentialAttributesKt;
 import com.intellij.ide.passwordSafe.PasswordSafe;
@@ -24,6 +27,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Supplier;
@@ -52,6 +56,12 @@ public class OpenAISettingsState implements PersistentStateComponent<OpenAISetti
     }};
 
     private volatile String readTimeout = "50000";
+    private volatile boolean enableConnectionWarmUp = true;
+    private volatile double requestLogSamplingRate = 0.0;
+    private volatile int maxRetries = RetryPolicy.DEFAULT.maxRetries();
+    private volatile int hedgeDelayMillis = 0;
+    private volatile boolean enableResponseCache = false;
+    private volatile boolean cacheNonDeterministicResponses = false;
     private volatile boolean enableAvatar = true;
     private volatile boolean enableLineWarp = true;
     private volatile Boolean enableInitialMessage = null;
@@ -80,6 +90,12 @@ public class OpenAISettingsState implements PersistentStateComponent<OpenAISetti
         this.gpt4Config = gpt4Config;
     }
 
+    @Transient
+    public RetryPolicy getRetryPolicy() {
+        var defaults = RetryPolicy.DEFAULT;
+        return new RetryPolicy(getMaxRetries(), defaults.initialBackoff(), defaults.maxBackoff(), Duration.ofMillis(getHedgeDelayMillis()));
+    }
+
     public void setCustomActionsPrefix(List<CustomAction> customActionsPrefix) {
         this.customActionsPrefix = new CopyOnWriteArrayList<>(customActionsPrefix);
     }
@@ -99,6 +115,9 @@ public class OpenAISettingsState implements PersistentStateComponent<OpenAISetti
         private volatile boolean enableCustomApiEndpointUrl = false;
         private volatile String apiEndpointUrl = DEFAULT_API_ENDPOINT;
         private volatile List<String> apiEndpointUrlHistory = List.of(apiEndpointUrl);
+        private volatile TokenBudgetPolicy.Kind tokenBudgetPolicyKind = TokenBudgetPolicy.Kind.RATIO;
+        private volatile double responseTokenRatio = 1.0/3;
+        private volatile int responseTokenReserve = 1024;
 
         public static final String DEFAULT_API_ENDPOINT = "https://api.openai.com/v1/chat/completions";
 
@@ -114,7 +133,10 @@ public class OpenAISettingsState implements PersistentStateComponent<OpenAISetti
                     enableTokenConsumption,
                     enableStreamResponse,
                     enableCustomApiEndpointUrl,
-                    apiEndpointUrl
+                    apiEndpointUrl,
+                    tokenBudgetPolicyKind,
+                    responseTokenRatio,
+                    responseTokenReserve
             );
         }
 
@@ -130,7 +152,10 @@ public class OpenAISettingsState implements PersistentStateComponent<OpenAISetti
                         && Objects.equals(enableTokenConsumption, that.enableTokenConsumption)
                         && Objects.equals(enableStreamResponse, that.enableStreamResponse)
                         && Objects.equals(enableCustomApiEndpointUrl, that.enableCustomApiEndpointUrl)
-                        && Objects.equals(apiEndpointUrl, that.apiEndpointUrl);
+                        && Objects.equals(apiEndpointUrl, that.apiEndpointUrl)
+                        && Objects.equals(tokenBudgetPolicyKind, that.tokenBudgetPolicyKind)
+                        && Objects.equals(responseTokenRatio, that.responseTokenRatio)
+                        && Objects.equals(responseTokenReserve, that.responseTokenReserve);
             }
             return false;
         }
@@ -149,6 +174,16 @@ public class OpenAISettingsState implements PersistentStateComponent<OpenAISetti
             return () -> "";
         }
 
+        @Override
+        @Transient
+        public TokenBudgetPolicy getTokenBudgetPolicy() {
+            return switch (getTokenBudgetPolicyKind()) {
+                case RATIO -> TokenBudgetPolicy.ratio(getResponseTokenRatio());
+                case FIXED -> TokenBudgetPolicy.fixed(getResponseTokenReserve());
+                case ADAPTIVE -> TokenBudgetPolicy.adaptive(ResponseLengthHistory.forModelPage(getModelPage()), getResponseTokenReserve());
+            };
+        }
+
         @Transient
         public String getApiKey() {
             var apiKey = PasswordSafe.getInstance().getPassword(createCredentialAttributes(getModelPage()));
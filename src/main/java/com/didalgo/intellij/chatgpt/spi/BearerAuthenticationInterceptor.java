@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.spi;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Objects;
+
+public class BearerAuthenticationInterceptor implements Interceptor {
+
+    private final String token;
+
+    public BearerAuthenticationInterceptor(String token) {
+        Objects.requireNonNull(token, "OpenAI token required");
+        this.token = token;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request()
+                .newBuilder()
+                .header("Authorization", "Bearer " + token)
+                .build();
+        return chain.proceed(request);
+    }
+}
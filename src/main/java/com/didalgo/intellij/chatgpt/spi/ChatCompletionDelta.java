@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.spi;
+
+/**
+ * Text appended to a single choice by a single streamed chat completion event.
+ *
+ * @param choiceIndex the index of the response choice
+ * @param content the appended text, empty for events carrying no content, such as the role-only ones
+ */
+public record ChatCompletionDelta(int choiceIndex, String content) { }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.spi;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Parses the server-sent event stream of the chat completion response into {@link ChatCompletionDelta}s.
+ * <p>
+ * Only {@code choices[].index} and {@code choices[].delta.content} are extracted, using the Jackson
+ * streaming token reader; all other fields are skipped without being materialized.
+ */
+public class ChatCompletionStreamParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String DATA_FIELD = "data:";
+    private static final String DONE = "[DONE]";
+
+    /**
+     * Reads the events from the given source until the {@code [DONE]} event or the end of stream.
+     *
+     * @param source the response body source
+     * @param sink the consumer of the deltas of each event, which carries any choices
+     * @throws IOException if reading fails, or the stream reports an error
+     */
+    public void parse(BufferedSource source, Consumer<List<ChatCompletionDelta>> sink) throws IOException {
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith(DATA_FIELD))
+                continue; // blank separators, comments and other fields
+
+            int dataStart = DATA_FIELD.length();
+            if (dataStart < line.length() && line.charAt(dataStart) == ' ')
+                dataStart++;
+            if (line.startsWith(DONE, dataStart))
+                return;
+
+            List<ChatCompletionDelta> deltas = parseEvent(line, dataStart);
+            if (!deltas.isEmpty())
+                sink.accept(deltas);
+        }
+    }
+
+    protected List<ChatCompletionDelta> parseEvent(String line, int dataStart) throws IOException {
+        List<ChatCompletionDelta> deltas = List.of();
+        try (JsonParser parser = JSON_FACTORY.createParser(line.toCharArray(), dataStart, line.length() - dataStart)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException("Invalid chat completion event: " + line);
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(fieldName) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        var delta = parseChoice(parser);
+                        if (delta != null) {
+                            if (deltas.isEmpty())
+                                deltas = new ArrayList<>(1);
+                            deltas.add(delta);
+                        }
+                    }
+                } else if ("error".equals(fieldName) && value == JsonToken.START_OBJECT) {
+                    throw new IOException("Chat completion stream failed: " + parseErrorMessage(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return deltas;
+    }
+
+    private static ChatCompletionDelta parseChoice(JsonParser parser) throws IOException {
+        int index = 0;
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("index".equals(fieldName) && value == JsonToken.VALUE_NUMBER_INT) {
+                index = parser.getIntValue();
+            } else if ("delta".equals(fieldName) && value == JsonToken.START_OBJECT) {
+                content = "";
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    boolean isContent = "content".equals(parser.getCurrentName());
+                    if (parser.nextToken() == JsonToken.VALUE_STRING && isContent)
+                        content = parser.getText();
+                    else
+                        parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return (content == null)? null : new ChatCompletionDelta(index, content);
+    }
+
+    private static String parseErrorMessage(JsonParser parser) throws IOException {
+        String message = "unknown error";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            boolean isMessage = "message".equals(parser.getCurrentName());
+            if (parser.nextToken() == JsonToken.VALUE_STRING && isMessage)
+                message = parser.getText();
+            else
+                parser.skipChildren();
+        }
+        return message;
+    }
+}
@@ -32,8 +32,12 @@ public class DefaultOpenAiServiceProvider implements OpenAiServiceProvider {
             baseUrl = baseUrl.substring(0, baseUrl.lastIndexOf("v1/chat/completions"));
         }
 
-        OkHttpClient client = OpenAiService.defaultClient(modelSettings.getApiKey(),
-                Duration.of(Long.parseLong(settings.getReadTimeout()), ChronoUnit.MILLIS));
+        OkHttpClient client = OpenAiHttpClientFactory.getInstance()
+                .newClientBuilder(Duration.of(Long.parseLong(settings.getReadTimeout()), ChronoUnit.MILLIS))
+                .addInterceptor(new BearerAuthenticationInterceptor(modelSettings.getApiKey()))
+                .addInterceptor(new RateLimitHeadersInterceptor())
+                .addInterceptor(new RequestLogInterceptor(settings::getRequestLogSamplingRate, RequestLogInterceptor.DEFAULT_MAX_BODY_SAMPLE_SIZE))
+                .build();
         ObjectMapper mapper = OpenAiService.defaultObjectMapper();
 
         Retrofit retrofit = new Retrofit.Builder()
@@ -44,6 +48,6 @@ public class DefaultOpenAiServiceProvider implements OpenAiServiceProvider {
                 .build();
 
         OpenAiApi api = retrofit.create(OpenAiApi.class);
-        return new OpenAiService(api, client.dispatcher().executorService());
+        return new StreamingOpenAiService(api);
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.spi;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the single {@link ConnectionPool} and {@link Dispatcher} shared by HTTP clients of all
+ * OpenAI services. The services are recreated on each settings change, but their clients are derived
+ * from the shared one, so that pooled connections, including their TLS sessions, outlive the services.
+ */
+public class OpenAiHttpClientFactory implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(OpenAiHttpClientFactory.class);
+
+    /**
+     * The limits of concurrent calls of the shared dispatcher. Each streamed response occupies its call
+     * for the whole answer, and hedged requests and connection warm-ups take calls too, so the limits
+     * are set well above the {@link Dispatcher} defaults, meant for a single client, to let the exchanges
+     * of all model pages and projects proceed at once instead of waiting silently in the queue.
+     */
+    private static final int MAX_REQUESTS_PER_HOST = 32;
+    private static final int MAX_REQUESTS = 64;
+
+    private final OkHttpClient sharedClient = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+            .dispatcher(createDispatcher())
+            .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .build();
+
+    private static Dispatcher createDispatcher() {
+        var dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        return dispatcher;
+    }
+
+    public static OpenAiHttpClientFactory getInstance() {
+        return ApplicationManager.getApplication().getService(OpenAiHttpClientFactory.class);
+    }
+
+    public final OkHttpClient getSharedClient() {
+        return sharedClient;
+    }
+
+    /**
+     * Creates a builder of the client sharing the connection pool and dispatcher with all other
+     * clients created by this factory.
+     *
+     * @param readTimeout the read timeout of the client
+     * @return the client builder
+     */
+    public OkHttpClient.Builder newClientBuilder(Duration readTimeout) {
+        return sharedClient.newBuilder()
+                .readTimeout(readTimeout);
+    }
+
+    /**
+     * Opens pooled connections to the given endpoints in the background, so that the first request
+     * does not pay for the DNS lookup and the TCP and TLS handshakes. The endpoints are probed with
+     * unauthenticated {@code HEAD} requests, and the responses are discarded.
+     *
+     * @param endpointUrls the endpoint URLs
+     */
+    public void warmUp(Collection<String> endpointUrls) {
+        new LinkedHashSet<>(endpointUrls).forEach(this::warmUp);
+    }
+
+    private void warmUp(String endpointUrl) {
+        HttpUrl url = HttpUrl.parse(endpointUrl);
+        if (url == null)
+            return;
+
+        var request = new Request.Builder().url(url).head().build();
+        sharedClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                response.close();
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                LOG.debug("Connection warm-up to " + url.host() + " failed", e);
+            }
+        });
+    }
+
+    @Override
+    public void dispose() {
+        sharedClient.dispatcher().executorService().shutdown();
+        sharedClient.connectionPool().evictAll();
+    }
+}
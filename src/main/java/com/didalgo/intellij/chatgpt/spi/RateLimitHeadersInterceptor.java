@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.spi;
+
+import com.didalgo.intellij.chatgpt.core.RequestScheduler;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Invocation;
+
+import java.io.IOException;
+
+/**
+ * Feeds the {@code x-ratelimit-*} headers of the responses into the {@link RequestScheduler}, for the
+ * model named in the request.
+ */
+public class RateLimitHeadersInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        if (response.header("x-ratelimit-limit-requests") == null && response.header("x-ratelimit-limit-tokens") == null
+                && response.header("x-ratelimit-remaining-requests") == null && response.header("x-ratelimit-remaining-tokens") == null)
+            return response;
+
+        long now = System.nanoTime();
+        var rateLimiter = RequestScheduler.getInstance().getRateLimiter(response.request().url().toString(), getModel(chain.request()));
+        long requestLimit = parseLong(response.header("x-ratelimit-limit-requests"));
+        long tokenLimit = parseLong(response.header("x-ratelimit-limit-tokens"));
+        if (requestLimit > 0 || tokenLimit > 0)
+            rateLimiter.setLimits(requestLimit, tokenLimit, now);
+
+        rateLimiter.setRemaining(
+                parseLong(response.header("x-ratelimit-remaining-requests")),
+                parseLong(response.header("x-ratelimit-remaining-tokens")),
+                now);
+        return response;
+    }
+
+    /**
+     * Gives the model of the chat completion request, read from the {@link Invocation} tagged by Retrofit
+     * to the HTTP request, rather than from the serialized body, or {@code null} if the request has none.
+     */
+    static String getModel(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        if (invocation != null)
+            for (Object argument : invocation.arguments())
+                if (argument instanceof ChatCompletionRequest chatCompletionRequest)
+                    return chatCompletionRequest.getModel();
+        return null;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null)
+            return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
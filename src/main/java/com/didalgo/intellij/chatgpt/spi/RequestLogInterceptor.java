@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.spi;
+
+import com.intellij.openapi.diagnostic.Logger;
+import okhttp3.*;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Logs a sample of the requests, with their headers, sizes, timings and the leading part of their
+ * bodies. Unlike {@code HttpLoggingInterceptor} at the {@code BODY} level, it never buffers whole
+ * bodies of the responses, and costs nothing for the requests not sampled.
+ */
+public class RequestLogInterceptor implements Interceptor {
+
+    public static final int DEFAULT_MAX_BODY_SAMPLE_SIZE = 1024;
+
+    private static final Logger LOG = Logger.getInstance(RequestLogInterceptor.class);
+
+    private static final Set<String> REDACTED_HEADERS = Set.of("authorization", "api-key");
+
+    private final DoubleSupplier samplingRate;
+    private final int maxBodySampleSize;
+
+    /**
+     * @param samplingRate the supplier of the fraction of requests logged, from {@code 0.0} (none)
+     *                     to {@code 1.0} (all)
+     * @param maxBodySampleSize the maximum number of bytes of each body logged
+     */
+    public RequestLogInterceptor(DoubleSupplier samplingRate, int maxBodySampleSize) {
+        this.samplingRate = samplingRate;
+        this.maxBodySampleSize = maxBodySampleSize;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        double rate = samplingRate.getAsDouble();
+        if (rate <= 0.0 || rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate)
+            return chain.proceed(chain.request());
+
+        Request request = chain.request();
+        var log = new StringBuilder(256)
+                .append(request.method()).append(' ').append(request.url().encodedPath());
+        appendHeaders(log, request.headers());
+        RequestBody requestBody = request.body();
+        if (requestBody != null) {
+            log.append("\n  request body: ").append(requestBody.contentLength()).append(" bytes");
+            if (!requestBody.isOneShot() && !requestBody.isDuplex())
+                appendBodySample(log, requestBody);
+        }
+
+        long startNanos = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            log.append("\n  failed after ").append(elapsedMillis(startNanos)).append(" ms: ").append(e);
+            LOG.info(log.toString());
+            throw e;
+        }
+
+        log.append("\n  -> ").append(response.code()).append(" in ").append(elapsedMillis(startNanos)).append(" ms");
+        appendHeaders(log, response.headers());
+        ResponseBody responseBody = response.body();
+        if (responseBody != null) {
+            MediaType contentType = responseBody.contentType();
+            log.append("\n  response body: ").append(responseBody.contentLength()).append(" bytes");
+            // peeking into an event stream would hold back the first events until the sample is filled
+            if (contentType != null && !"event-stream".equals(contentType.subtype()))
+                log.append(", sample: ").append(response.peekBody(maxBodySampleSize).string());
+        }
+        LOG.info(log.toString());
+        return response;
+    }
+
+    private static void appendHeaders(StringBuilder log, Headers headers) {
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            log.append("\n  ").append(name).append(": ")
+                    .append(REDACTED_HEADERS.contains(name.toLowerCase()) ? "<redacted>" : headers.value(i));
+        }
+    }
+
+    private void appendBodySample(StringBuilder log, RequestBody body) throws IOException {
+        var buffer = new Buffer();
+        body.writeTo(buffer);
+        long size = Math.min(buffer.size(), maxBodySampleSize);
+        log.append(", sample: ").append(buffer.readString(size, StandardCharsets.UTF_8));
+        if (buffer.size() > 0)
+            log.append("[...]");
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.spi;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.OpenAiError;
+import com.theokanning.openai.OpenAiHttpException;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.service.OpenAiService;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.util.List;
+
+/**
+ * {@link OpenAiService} which streams chat completions as plain {@link ChatCompletionDelta}s,
+ * read directly from the response body by the {@link ChatCompletionStreamParser}, instead of
+ * deserializing each event into the whole {@code ChatCompletionChunk} object graph.
+ */
+public class StreamingOpenAiService extends OpenAiService {
+
+    private static final ObjectMapper errorMapper = OpenAiService.defaultObjectMapper();
+
+    private final OpenAiApi api;
+    private final ChatCompletionStreamParser parser = new ChatCompletionStreamParser();
+
+    public StreamingOpenAiService(OpenAiApi api) {
+        super(api);
+        this.api = api;
+    }
+
+    public Flowable<List<ChatCompletionDelta>> streamChatCompletionDeltas(ChatCompletionRequest request) {
+        request.setStream(true);
+        return Flowable.create(emitter -> {
+            Call<ResponseBody> call = api.createChatCompletionStream(request);
+            emitter.setCancellable(call::cancel);
+            call.enqueue(new DeltaCallback(emitter));
+        }, BackpressureStrategy.BUFFER);
+    }
+
+    private class DeltaCallback implements Callback<ResponseBody> {
+        private final FlowableEmitter<List<ChatCompletionDelta>> emitter;
+
+        DeltaCallback(FlowableEmitter<List<ChatCompletionDelta>> emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void onResponse(@NotNull Call<ResponseBody> call, @NotNull Response<ResponseBody> response) {
+            try {
+                if (!response.isSuccessful()) {
+                    var cause = new HttpException(response);
+                    try (ResponseBody errorBody = response.errorBody()) {
+                        if (errorBody == null)
+                            throw cause;
+                        throw toOpenAiHttpException(errorBody.string(), cause);
+                    }
+                }
+                try (ResponseBody body = response.body()) {
+                    if (body != null)
+                        parser.parse(body.source(), emitter::onNext);
+                }
+                emitter.onComplete();
+            } catch (Throwable t) {
+                onFailure(call, t);
+            }
+        }
+
+        /**
+         * Gives the exception describing the error returned in the response body, or the original
+         * {@code cause} when the body isn't an OpenAI error, such as the HTML or plain text error page
+         * of a proxy or gateway.
+         */
+        private RuntimeException toOpenAiHttpException(String errorBody, HttpException cause) {
+            OpenAiError error;
+            try {
+                error = errorMapper.readValue(errorBody, OpenAiError.class);
+            } catch (JsonProcessingException e) {
+                cause.addSuppressed(e);
+                return cause;
+            }
+            if (error == null || error.getError() == null)
+                return cause;
+            return new OpenAiHttpException(error, cause, cause.code());
+        }
+
+        @Override
+        public void onFailure(@NotNull Call<ResponseBody> call, @NotNull Throwable t) {
+            if (!emitter.isCancelled())
+                emitter.onError(t);
+        }
+    }
+}
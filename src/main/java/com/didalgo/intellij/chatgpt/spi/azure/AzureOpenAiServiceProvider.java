@@ -5,12 +5,15 @@
 package com.didalgo.intellij.chatgpt.spi.azure;
 
 import com.didalgo.intellij.chatgpt.settings.OpenAISettingsState;
+import com.didalgo.intellij.chatgpt.spi.OpenAiHttpClientFactory;
 import com.didalgo.intellij.chatgpt.spi.OpenAiServiceConfiguratorInterceptor;
 import com.didalgo.intellij.chatgpt.spi.OpenAiServiceProvider;
+import com.didalgo.intellij.chatgpt.spi.RateLimitHeadersInterceptor;
+import com.didalgo.intellij.chatgpt.spi.RequestLogInterceptor;
+import com.didalgo.intellij.chatgpt.spi.StreamingOpenAiService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.theokanning.openai.service.OpenAiService;
 import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
 import retrofit2.converter.jackson.JacksonConverterFactory;
@@ -19,7 +22,6 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
-import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,20 +54,16 @@ public class AzureOpenAiServiceProvider implements OpenAiServiceProvider {
         var timeout = Duration.of(Long.parseLong(settings.getReadTimeout()), ChronoUnit.MILLIS);
         var token = modelSettings.getApiKey();
 
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-
         AzureOpenAiServiceConfiguration azureConfig = new AzureOpenAiServiceConfiguration(deploymentId, apiVersion);
         ObjectMapper mapper = OpenAiService.defaultObjectMapper();
-        OkHttpClient client = OpenAiService.defaultClient(token, timeout)
-                .newBuilder()
-                //.addInterceptor(loggingInterceptor)
+        OkHttpClient client = OpenAiHttpClientFactory.getInstance()
+                .newClientBuilder(timeout)
                 .addInterceptor(new OpenAiServiceConfiguratorInterceptor(azureConfig))
                 .addInterceptor(new AzureAuthenticationInterceptor(token))
+                .addInterceptor(new RateLimitHeadersInterceptor())
+                .addInterceptor(new RequestLogInterceptor(settings::getRequestLogSamplingRate, RequestLogInterceptor.DEFAULT_MAX_BODY_SAMPLE_SIZE))
                 .build();
 
-        client.newBuilder();
-
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(baseUrl)
                 .client(client)
@@ -74,8 +72,7 @@ public class AzureOpenAiServiceProvider implements OpenAiServiceProvider {
                 .build();
 
         AzureOpenAiApi api = retrofit.create(AzureOpenAiApi.class);
-        ExecutorService executorService = client.dispatcher().executorService();
-        return new OpenAiService(api, executorService);
+        return new StreamingOpenAiService(api);
     }
 
     private static String extractBaseUrl(String url) {
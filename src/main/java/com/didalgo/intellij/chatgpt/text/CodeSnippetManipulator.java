@@ -4,42 +4,219 @@
  */
 package com.didalgo.intellij.chatgpt.text;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Wraps the code snippets attached to user messages, i.e. the {@code [title]} followed by one or more
+ * fenced code blocks, in collapsible {@code <div>} elements.
+ * <p>
+ * The snippets are found by a single forward scan, which gives the same results as the regular
+ * expression {@code (\[(.*?)](?:<br>)?(?:\s*(`{3,}).*?\3)+)(?:<br>|\s)*} (in {@code DOTALL} mode),
+ * but without the backtracking of the regular expression on large pasted texts.
+ */
 public class CodeSnippetManipulator {
 
-    private static final Pattern CODE_SNIPPET_BLOCK_PATTERN = Pattern.compile("(\\[(.*?)](?:<br>)?(?:\\s*(`{3,}).*?\\3)+)(?:<br>|\\s)*", Pattern.DOTALL);
-    private static final Pattern LAST_PATH_PATTERN = Pattern.compile(".*[\\\\/](.*)$");
+    private static final String LINE_BREAK_TAG = "<br>";
 
     public static String makeCodeSnippetBlocksCollapsible(String input) {
-        Matcher matcher = CODE_SNIPPET_BLOCK_PATTERN.matcher(input);
-        StringBuilder sb = new StringBuilder();
+        return new FencedBlockScanner(input).makeCollapsible();
+    }
 
-        while (matcher.find()) {
-            if (matcher.groupCount() < 2) {
-                continue;
+    private static final class FencedBlockScanner {
+        private final String text;
+        /** The starts and lengths of all runs of at least 3 backticks, in text order. */
+        private final int[] runStart;
+        private final int[] runLength;
+        /** The length of the longest run among the run and all its successors. */
+        private final int[] longestRunFrom;
+        /** The index of the nearest successive run longer than the run, or the run count if none. */
+        private final int[] nextLongerRun;
+        private int runCursor;
+
+        FencedBlockScanner(String text) {
+            this.text = text;
+
+            var starts = new int[16];
+            var lengths = new int[16];
+            int count = 0;
+            for (int i = 0; i < text.length(); ) {
+                if (text.charAt(i) != '`') {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < text.length() && text.charAt(i) == '`')
+                    i++;
+                if (i - start >= 3) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        lengths = Arrays.copyOf(lengths, count * 2);
+                    }
+                    starts[count] = start;
+                    lengths[count++] = i - start;
+                }
             }
-            String fullMatch = matcher.group(1);
-            String title = matcher.group(2);
+            runStart = starts;
+            runLength = lengths;
+            longestRunFrom = new int[count + 1];
+            nextLongerRun = new int[count];
+            // runs not yet given their next longer run, in decreasing order of length from the bottom
+            var pending = new int[count];
+            int pendingCount = 0;
+            for (int r = count - 1; r >= 0; r--) {
+                longestRunFrom[r] = Math.max(runLength[r], longestRunFrom[r + 1]);
+                while (pendingCount > 0 && runLength[pending[pendingCount - 1]] <= runLength[r])
+                    pendingCount--;
+                nextLongerRun[r] = (pendingCount > 0)? pending[pendingCount - 1] : count;
+                pending[pendingCount++] = r;
+            }
+        }
+
+        private int runCount() {
+            return nextLongerRun.length;
+        }
+
+        String makeCollapsible() {
+            StringBuilder sb = null;
+            int position = 0, copied = 0, lastRejectedBracket = -1;
+            int open;
+            while ((open = text.indexOf('[', position)) >= 0) {
+                // the title ends at the first ']' followed by a fenced block
+                int close = text.indexOf(']', Math.max(open + 1, lastRejectedBracket + 1));
+                int end = -1;
+                while (close >= 0 && (end = fencedBlockEnd(skipLineBreakTag(close + 1))) < 0) {
+                    lastRejectedBracket = close;
+                    close = text.indexOf(']', close + 1);
+                }
+                if (close < 0)
+                    break;
 
-            // Shorten the title
-            String[] words = title.split("\\s+");
-            String shortenedTitle = (words.length > 2 ? words[0] + " " + words[1] + " ... " : title);
+                int blockEnd;
+                while ((blockEnd = fencedBlockEnd(end)) >= 0)
+                    end = blockEnd;
 
-            // Extract the last path
-            Matcher pathMatcher = LAST_PATH_PATTERN.matcher(title);
-            if (pathMatcher.matches()) {
-                shortenedTitle += pathMatcher.group(1);
+                if (sb == null)
+                    sb = new StringBuilder(text.length() + 128);
+                sb.append(text, copied, open)
+                        .append("<div class=\"collapsible\" ai-code-snippet title=\"").append(shortenTitle(text.substring(open + 1, close))).append("\">\n")
+                        .append(text, open, end)
+                        .append("\n</div>");
+                position = copied = skipLineBreaksAndWhitespace(end);
             }
 
-            // Replace with the new div tag
-            shortenedTitle = shortenedTitle.replace("\\", "\\\\").replace("$", "\\$");
-            fullMatch = fullMatch.replace("\\", "\\\\").replace("$", "\\$");
-            matcher.appendReplacement(sb, "<div class=\"collapsible\" ai-code-snippet title=\"" + shortenedTitle + "\">\n" + fullMatch + "\n</div>");
+            if (sb == null)
+                return text;
+            return sb.append(text, copied, text.length()).toString();
         }
-        matcher.appendTail(sb);
 
-        return sb.toString();
+        /**
+         * Finds the end of the fenced code block starting at the given position, after any whitespace.
+         * The closing fence consists of as many backticks as the opening fence, which is the longest
+         * one possible: either the whole run of backticks opening the block, or its first half when
+         * the run itself closes the block, or the part matching a later run of backticks.
+         *
+         * @return the end of the closing fence, or {@code -1} if no fenced block starts at the position
+         */
+        private int fencedBlockEnd(int position) {
+            int fenceStart = skipWhitespace(position);
+            int fenceEnd = fenceStart;
+            while (fenceEnd < text.length() && text.charAt(fenceEnd) == '`')
+                fenceEnd++;
+            int runLength = fenceEnd - fenceStart;
+            if (runLength < 3)
+                return -1;
+
+            int laterRun = firstRunFrom(fenceEnd);
+            int fenceLength = Math.max(runLength / 2, Math.min(runLength, longestRunFrom[laterRun]));
+            if (fenceLength < 3)
+                return -1;
+            if (2 * fenceLength <= runLength)
+                return fenceStart + 2 * fenceLength;
+
+            while (this.runLength[laterRun] < fenceLength)
+                laterRun = nextLongerRun[laterRun];
+            return runStart[laterRun] + fenceLength;
+        }
+
+        /** Gives the index of the first run starting at or after the position, moving the cursor. */
+        private int firstRunFrom(int position) {
+            while (runCursor > 0 && runStart[runCursor - 1] >= position)
+                runCursor--;
+            while (runCursor < runCount() && runStart[runCursor] < position)
+                runCursor++;
+            return runCursor;
+        }
+
+        private int skipLineBreakTag(int position) {
+            return text.startsWith(LINE_BREAK_TAG, position)? position + LINE_BREAK_TAG.length() : position;
+        }
+
+        private int skipWhitespace(int position) {
+            while (position < text.length() && isWhitespace(text.charAt(position)))
+                position++;
+            return position;
+        }
+
+        private int skipLineBreaksAndWhitespace(int position) {
+            for (int next; (next = skipLineBreakTag(skipWhitespace(position))) != position; )
+                position = next;
+            return position;
+        }
+    }
+
+    /**
+     * Shortens the title to its first two words, when longer, followed by the last segment of the path
+     * contained in it, if any.
+     */
+    static String shortenTitle(String title) {
+        List<String> words = splitWords(title);
+        String shortenedTitle = (words.size() > 2 ? words.get(0) + " " + words.get(1) + " ... " : title);
+
+        int lastSeparator = Math.max(title.lastIndexOf('/'), title.lastIndexOf('\\'));
+        if (lastSeparator >= 0 && !containsLineTerminator(title))
+            shortenedTitle += title.substring(lastSeparator + 1);
+
+        return shortenedTitle;
+    }
+
+    /**
+     * Splits the text around the runs of whitespace, the same way as {@code text.split("\\s+")}.
+     */
+    private static List<String> splitWords(String text) {
+        var words = new ArrayList<String>();
+        int wordStart = 0;
+        for (int i = 0; i < text.length(); ) {
+            if (!isWhitespace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            words.add(text.substring(wordStart, i));
+            while (i < text.length() && isWhitespace(text.charAt(i)))
+                i++;
+            wordStart = i;
+        }
+        if (words.isEmpty())
+            return List.of(text);
+
+        words.add(text.substring(wordStart));
+        while (!words.isEmpty() && words.get(words.size() - 1).isEmpty())
+            words.remove(words.size() - 1);
+        return words;
+    }
+
+    /** Tells whether the character is matched by {@code \s} of the regular expressions. */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean containsLineTerminator(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case '\n', '\r', '\u0085', '\u2028', '\u2029' -> { return true; }
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import com.vladsch.flexmark.ast.FencedCodeBlock;
+import com.vladsch.flexmark.ast.Heading;
+import com.vladsch.flexmark.ast.ListBlock;
+import com.vladsch.flexmark.ast.Reference;
+import com.vladsch.flexmark.ast.ThematicBreak;
+import com.vladsch.flexmark.util.ast.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders a growing markdown text, such as a streamed chat response, into HTML incrementally.
+ * <p>
+ * A top-level block (paragraph, fenced code, table, list, etc.) which is closed can no longer change
+ * when more text is appended. Such blocks are frozen and their rendered HTML is cached, so that every
+ * subsequent update re-parses and re-renders only the trailing, possibly still open blocks. A block is
+ * closed when it's a heading, a thematic break or a fenced code block followed by another block, or when
+ * it's separated from the following block by a blank line, except for a list followed only by the last
+ * block, which may still turn into its next item, e.g. {@code 2} into {@code 2. b}, or followed by an
+ * indented block. When the given text doesn't continue the previously rendered one, the renderer starts
+ * over.
+ * <p>
+ * Instances are stateful and meant to be used for a single message at a time.
+ */
+public class IncrementalMarkdownRenderer {
+
+    private final TextFragmentToHtmlFormatter formatter;
+    private final List<String> frozenBlocks = new ArrayList<>();
+    private CharSequence renderedMarkdown = "";
+    private int frozenMarkdownLength;
+    /** The text following the frozen blocks, i.e. the part of the rendered text that is re-parsed. */
+    private String openMarkdown = "";
+    private List<String> blocks = List.of();
+
+    public IncrementalMarkdownRenderer() {
+        this(TextFragmentToHtmlFormatter.getDefault());
+    }
+
+    public IncrementalMarkdownRenderer(TextFragmentToHtmlFormatter formatter) {
+        this.formatter = formatter;
+    }
+
+    /**
+     * Renders the given markdown, reusing the cached HTML of the blocks frozen in previous calls.
+     *
+     * @param markdown the complete markdown text rendered so far
+     * @return the text fragment with the HTML content precomputed, split into top-level blocks
+     */
+    public synchronized TextFragment render(String markdown) {
+        if (markdown.length() < frozenMarkdownLength || !markdown.regionMatches(0, renderedMarkdown.toString(), 0, frozenMarkdownLength))
+            reset();
+
+        return renderOpen(markdown.substring(frozenMarkdownLength), markdown);
+    }
+
+    /**
+     * Renders the text appended to the previously rendered one, such as a streamed chunk. Only the
+     * appended text and the trailing, still open block are looked at, so the complete text is neither
+     * copied nor materialized, unless it doesn't continue the previously rendered one.
+     *
+     * @param markdown the complete markdown text rendered so far, ending with the appended text
+     * @param appendedText the text appended since the previous call
+     * @return the text fragment with the HTML content precomputed, split into top-level blocks, whose
+     *         markdown is materialized from the given sequence only when requested
+     */
+    public synchronized TextFragment append(CharSequence markdown, String appendedText) {
+        if (renderedMarkdown.length() + appendedText.length() != markdown.length())
+            return render(markdown.toString());
+
+        return renderOpen(openMarkdown.concat(appendedText), markdown);
+    }
+
+    private TextFragment renderOpen(String tail, CharSequence markdown) {
+        Node document = formatter.parse(tail);
+        if (!canFreezeBlocksOf(document)) {
+            // fall back to full rendering of the entire text, without freezing anything
+            reset();
+            document = formatter.parse(tail = markdown.toString());
+        }
+
+        var trailingBlocks = new ArrayList<String>(1);
+        if (canFreezeBlocksOf(document)) {
+            Node openBlock = document.getFirstChild();
+            for (; openBlock != null && isClosed(openBlock, tail); openBlock = openBlock.getNext())
+                frozenBlocks.add(formatter.render(openBlock));
+
+            if (openBlock != null) {
+                int frozenLength = lineStartOffset(tail, openBlock.getStartOffset());
+                frozenMarkdownLength += frozenLength;
+                tail = tail.substring(frozenLength);
+                for (Node block = openBlock; block != null; block = block.getNext())
+                    trailingBlocks.add(formatter.render(block));
+            }
+        } else {
+            // references are resolved only when rendering the document as a whole
+            trailingBlocks.add(formatter.render(document));
+        }
+
+        var blocks = new ArrayList<String>(frozenBlocks.size() + trailingBlocks.size());
+        blocks.addAll(frozenBlocks);
+        blocks.addAll(trailingBlocks);
+        this.blocks = List.copyOf(blocks);
+        this.renderedMarkdown = markdown;
+        this.openMarkdown = tail;
+        return TextFragment.of(markdown, this.blocks);
+    }
+
+    /**
+     * Returns the HTML of the top-level blocks from the most recent {@link #render(String)} call.
+     * The frozen blocks are returned as the identical {@code String} instances in subsequent calls.
+     *
+     * @return the rendered blocks, in document order
+     */
+    public synchronized List<String> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the number of leading blocks which are frozen and won't change in subsequent renderings
+     * of the continued text.
+     *
+     * @return the number of frozen blocks
+     */
+    public synchronized int getFrozenBlockCount() {
+        return frozenBlocks.size();
+    }
+
+    public synchronized void reset() {
+        frozenBlocks.clear();
+        frozenMarkdownLength = 0;
+        renderedMarkdown = "";
+        openMarkdown = "";
+        blocks = List.of();
+    }
+
+    private static boolean canFreezeBlocksOf(Node document) {
+        // reference definitions may affect the rendering of any preceding block
+        for (Node block = document.getFirstChild(); block != null; block = block.getNext())
+            if (block instanceof Reference)
+                return false;
+        return true;
+    }
+
+    /**
+     * Tells whether the top-level block is closed, so that it can no longer change when more text is
+     * appended to the given text.
+     */
+    private static boolean isClosed(Node block, String text) {
+        Node next = block.getNext();
+        if (next == null)
+            return false;
+        if (block instanceof Heading || block instanceof ThematicBreak || block instanceof FencedCodeBlock)
+            return true;
+        if (!isFollowedByBlankLine(block, next, text))
+            return false;
+
+        // the last block following a list may still turn into its item, or the content of its item,
+        // e.g. the paragraph "2" into "2. b", or the thematic break "* **" into "* ***x", while the
+        // meaning of an indented block depends on the indentation of the list items
+        return !(block instanceof ListBlock && (next.getNext() == null || lineStartOffset(text, next.getStartOffset()) != next.getStartOffset()));
+    }
+
+    private static boolean isFollowedByBlankLine(Node block, Node next, String text) {
+        int contentEnd = block.getEndOffset();
+        while (contentEnd > block.getStartOffset() && Character.isWhitespace(text.charAt(contentEnd - 1)))
+            contentEnd--;
+
+        int lineBreaks = 0;
+        for (int i = contentEnd; i < next.getStartOffset(); i++)
+            if (text.charAt(i) == '\n' && ++lineBreaks == 2)
+                return true;
+        return false;
+    }
+
+    /**
+     * Gives the start of the line containing the given offset, so that the indentation of the block
+     * starting at the offset is kept with it.
+     */
+    private static int lineStartOffset(String text, int offset) {
+        return text.lastIndexOf('\n', offset - 1) + 1;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import com.vladsch.flexmark.ast.HtmlEntity;
+import com.vladsch.flexmark.ast.HtmlInline;
+import com.vladsch.flexmark.ast.HtmlInlineComment;
+import com.vladsch.flexmark.html.HtmlWriter;
+import com.vladsch.flexmark.html.renderer.NodeRenderer;
+import com.vladsch.flexmark.html.renderer.NodeRendererContext;
+import com.vladsch.flexmark.html.renderer.NodeRenderingHandler;
+import com.vladsch.flexmark.util.ast.Node;
+
+import java.util.Set;
+
+/**
+ * Renders any inline HTML and HTML entities found in the markdown literally, as the escaped text
+ * they were written with, so that the text of a chat message is always shown as is. All the other
+ * nodes, including the code, are escaped by the core renderer while being written, which makes
+ * escaping the markdown before parsing, and unescaping the code after rendering, unnecessary.
+ */
+public class LiteralHtmlNodeRenderer implements NodeRenderer {
+
+    @Override
+    public Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
+        return Set.of(
+                new NodeRenderingHandler<>(HtmlInline.class, LiteralHtmlNodeRenderer::renderLiterally),
+                new NodeRenderingHandler<>(HtmlInlineComment.class, LiteralHtmlNodeRenderer::renderLiterally),
+                new NodeRenderingHandler<>(HtmlEntity.class, LiteralHtmlNodeRenderer::renderLiterally));
+    }
+
+    private static void renderLiterally(Node node, NodeRendererContext context, HtmlWriter html) {
+        html.text(node.getChars());
+    }
+}
@@ -4,6 +4,7 @@
  */
 package com.didalgo.intellij.chatgpt.text;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.Objects.requireNonNull;
@@ -16,13 +17,38 @@ public interface TextFragment extends CharSequence, TextContent {
     String markdown();
 
     static TextFragment of(String markdown) {
-        return of(markdown, null);
+        return of(markdown, (String) null);
     }
 
     static TextFragment of(String markdown, String html) {
         return new Of(markdown, new AtomicReference<>(html));
     }
 
+    /**
+     * Creates the text fragment with the HTML content already rendered as the list of top-level blocks.
+     *
+     * @param markdown the markdown text
+     * @param htmlBlocks the HTML of the top-level blocks, in document order
+     * @return the text fragment
+     */
+    static TextFragment of(String markdown, List<String> htmlBlocks) {
+        return new Blocks(markdown, htmlBlocks);
+    }
+
+    /**
+     * Creates the text fragment with the HTML content already rendered as the list of top-level blocks,
+     * and the markdown text materialized from the given character sequence only when requested.
+     *
+     * @param markdown the markdown text, which must not change afterwards
+     * @param htmlBlocks the HTML of the top-level blocks, in document order
+     * @return the text fragment
+     */
+    static TextFragment of(CharSequence markdown, List<String> htmlBlocks) {
+        if (markdown instanceof String text)
+            return of(text, htmlBlocks);
+        return new LazyBlocks(markdown, htmlBlocks);
+    }
+
     static TextFragment empty() {
         return of("");
     }
@@ -52,6 +78,67 @@ public interface TextFragment extends CharSequence, TextContent {
         }
     }
 
+    record Blocks(String markdown, List<String> htmlBlocks) implements TextFragment {
+        public Blocks {
+            requireNonNull(markdown, "markdown");
+            htmlBlocks = List.copyOf(htmlBlocks);
+        }
+
+        @Override
+        public String toHtml() {
+            return String.join("", htmlBlocks);
+        }
+
+        @Override
+        public String toString() {
+            return markdown;
+        }
+    }
+
+    final class LazyBlocks implements TextFragment {
+        private final CharSequence source;
+        private final List<String> htmlBlocks;
+        private volatile String markdown;
+
+        LazyBlocks(CharSequence source, List<String> htmlBlocks) {
+            this.source = requireNonNull(source, "source");
+            this.htmlBlocks = List.copyOf(htmlBlocks);
+        }
+
+        @Override
+        public String markdown() {
+            String text = markdown;
+            if (text == null)
+                markdown = text = source.toString();
+            return text;
+        }
+
+        @Override
+        public int length() {
+            return source.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return source.charAt(index);
+        }
+
+        @Override
+        public String toHtml() {
+            return String.join("", htmlBlocks);
+        }
+
+        @Override
+        public List<String> htmlBlocks() {
+            return htmlBlocks;
+        }
+
+        @Override
+        public String toString() {
+            return markdown();
+        }
+    }
+
     @Override
     default int length() {
         return markdown().length();
@@ -71,6 +158,16 @@ public interface TextFragment extends CharSequence, TextContent {
         return TextFragmentToHtmlFormatter.getDefault().format(this);
     }
 
+    /**
+     * Returns the HTML content split into top-level blocks, so that consumers can tell which parts
+     * of the content changed between two fragments. By default, the whole content is a single block.
+     *
+     * @return the HTML of the top-level blocks, in document order
+     */
+    default List<String> htmlBlocks() {
+        return List.of(toHtml());
+    }
+
     @Override
     default StringBuilder appendTo(StringBuilder buf) {
         return buf.append(markdown());
@@ -10,7 +10,7 @@ import com.vladsch.flexmark.ext.tables.TablesExtension;
 import com.vladsch.flexmark.html.HtmlRenderer;
 import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.util.ast.Node;
-import com.vladsch.flexmark.util.sequence.Escaping;
+import com.vladsch.flexmark.util.data.MutableDataSet;
 
 import java.util.List;
 
@@ -21,61 +21,71 @@ public final class TextFragmentToHtmlFormatter implements TextFragmentFormatter
         return ApplicationManager.getApplication().getService(TextFragmentToHtmlFormatter.class);
     }
 
-    private Parser markdownParser;
-    private HtmlRenderer htmlRenderer;
+    /**
+     * The parser, built once, when the class is initialized, and shared by all formatters. Lines of
+     * raw HTML are kept in paragraphs, to be rendered literally. Immutable, and safe to use concurrently.
+     */
+    private static final Parser MARKDOWN_PARSER = Parser.builder(new MutableDataSet().set(Parser.HTML_BLOCK_PARSER, false))
+            .extensions(List.of(TablesExtension.create()))
+            .build();
 
-    public Parser getMarkdownParser() {
-        Parser parser = markdownParser;
-        if (parser == null)
-            parser = markdownParser = Parser.builder()
-                    .extensions(List.of(TablesExtension.create()))
-                    .build();
+    /**
+     * The renderer, built once, when the class is initialized, and shared by all formatters.
+     * Immutable, and safe to use concurrently.
+     */
+    private static final HtmlRenderer HTML_RENDERER = HtmlRenderer.builder()
+            .softBreak("<br>")
+            .nodeRendererFactory(options -> new LiteralHtmlNodeRenderer())
+            .extensions(List.of(TablesExtension.create()))
+            .build();
+
+    /** Maximum capacity of the per-thread working buffer retained between renderings. */
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 64 * 1024;
+
+    /** The working buffer the HTML is rendered into, pooled per thread, since the renderer is shared. */
+    private static final ThreadLocal<StringBuilder> renderBuffer = ThreadLocal.withInitial(() -> new StringBuilder(1024));
 
-        return parser;
+    public Parser getMarkdownParser() {
+        return MARKDOWN_PARSER;
     }
 
     public HtmlRenderer getHtmlRenderer() {
-        HtmlRenderer renderer = htmlRenderer;
-        if (renderer == null)
-            renderer = htmlRenderer = HtmlRenderer.builder()
-                    .softBreak("<br>")
-                    .extensions(List.of(TablesExtension.create()))
-                    .build();
-
-        return renderer;
+        return HTML_RENDERER;
     }
 
     @Override
     public String format(TextFragment markdown) {
-        String escaped = Escaping.escapeHtml(markdown.markdown(), false);
-        Node document = getMarkdownParser().parse(escaped);
-        String html = getHtmlRenderer().render(document);
-        return unescapeCode(html);
+        return render(parse(markdown.markdown()));
     }
 
-    private static String unescapeCode(String html) {
-        StringBuilder result = new StringBuilder();
-        int position = 0;
-        int startCode, endCode;
-
-        while ((startCode = html.indexOf("<code", position)) != -1) {
-            startCode = html.indexOf(">", startCode);
-            if (startCode == -1) {
-                break;
-            }
-
-            endCode = html.indexOf("</code>", startCode);
-            if (endCode == -1) {
-                break;
-            }
+    /**
+     * Parses the given markdown into the document, with any raw HTML in the markdown to be rendered
+     * literally.
+     *
+     * @param markdown the markdown text
+     * @return the parsed document
+     */
+    public Node parse(String markdown) {
+        return getMarkdownParser().parse(markdown);
+    }
 
-            result.append(html, position, startCode + 1);
-            String codeFragment = html.substring(startCode + 1, endCode);
-            result.append(Escaping.unescapeHtml(codeFragment));
-            position = endCode;
+    /**
+     * Renders the given node, which may be either the whole document or any of its
+     * descendants, previously obtained from {@link #parse(String)}.
+     *
+     * @param node the node to render
+     * @return the HTML content
+     */
+    public String render(Node node) {
+        var buffer = renderBuffer.get();
+        try {
+            getHtmlRenderer().render(node, buffer);
+            return buffer.toString();
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER_CAPACITY)
+                renderBuffer.remove();
+            else
+                buffer.setLength(0);
         }
-
-        result.append(html.substring(position));
-        return result.toString();
     }
 }
@@ -9,12 +9,12 @@ import java.util.Stack;
 public final class TextFragmentUtils {
     private  TextFragmentUtils() {}
 
-    private static FlexmarkHtmlConverter htmlConverter;
+    private static final class HtmlConverterHolder {
+        static final FlexmarkHtmlConverter HTML_CONVERTER = FlexmarkHtmlConverter.builder().build();
+    }
 
     public static FlexmarkHtmlConverter getHtmlConverter() {
-        if (htmlConverter == null)
-            htmlConverter = FlexmarkHtmlConverter.builder().build();
-        return htmlConverter;
+        return HtmlConverterHolder.HTML_CONVERTER;
     }
 
     public static TextFragment scrapContent(Component component) {
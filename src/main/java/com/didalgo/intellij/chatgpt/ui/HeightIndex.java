@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui;
+
+import java.util.Arrays;
+
+/**
+ * Compact index of the heights of the items of a vertical list, backed by a Fenwick tree,
+ * which gives item offsets and finds the item at the given position in O(log n) time.
+ */
+public class HeightIndex {
+
+    private int[] heights = new int[16];
+    /** The 1-based Fenwick tree of the heights. */
+    private int[] tree = new int[17];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public void add(int height) {
+        if (size == heights.length) {
+            heights = Arrays.copyOf(heights, size * 2);
+            tree = Arrays.copyOf(tree, size * 2 + 1);
+        }
+        int node = size + 1;
+        heights[size++] = height;
+        tree[node] = height + prefixSum(node - 1) - prefixSum(node - (node & -node));
+    }
+
+    public int get(int index) {
+        checkIndex(index);
+        return heights[index];
+    }
+
+    public void set(int index, int height) {
+        checkIndex(index);
+        int delta = height - heights[index];
+        heights[index] = height;
+        for (int node = index + 1; node <= size; node += node & -node)
+            tree[node] += delta;
+    }
+
+    /**
+     * Returns the offset of the given item, i.e. the total height of all items preceding it.
+     *
+     * @param index the item index, may be equal to {@link #size()}
+     * @return the item offset
+     */
+    public int offsetOf(int index) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        return prefixSum(index);
+    }
+
+    public int totalHeight() {
+        return prefixSum(size);
+    }
+
+    /**
+     * Finds the item containing the given position. Positions before the first item map to the first one,
+     * and positions past the last item map to the last one.
+     *
+     * @param y the position
+     * @return the index of the item, or {@code -1} if the index is empty
+     */
+    public int indexAt(int y) {
+        if (size == 0)
+            return -1;
+
+        int node = 0, remaining = y;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            int next = node + step;
+            if (next <= size && tree[next] <= remaining) {
+                node = next;
+                remaining -= tree[next];
+            }
+        }
+        return Math.max(0, Math.min(node, size - 1));
+    }
+
+    public void clear() {
+        Arrays.fill(tree, 0, size + 1, 0);
+        size = 0;
+    }
+
+    private int prefixSum(int count) {
+        int sum = 0;
+        for (int node = count; node > 0; node -= node & -node)
+            sum += tree[node];
+        return sum;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Lays out the top-level HTML blocks of a message as separate children of the document body, so that
+ * the document can be updated structurally, by replacing only the blocks that changed, while the views
+ * and embedded components of the unchanged blocks are kept alive.
+ */
+public final class HtmlBlocks {
+
+    public static final String BLOCK_CLASS = "message-block";
+
+    /**
+     * Wraps each of the given blocks in its own {@code <div>}, making it a single child of the body.
+     *
+     * @param blocks the HTML of the top-level blocks
+     * @return the HTML content of the body
+     */
+    public static String wrap(List<String> blocks) {
+        StringBuilder buf = new StringBuilder();
+        for (String block : blocks)
+            appendWrapped(buf, block);
+        return buf.toString();
+    }
+
+    private static StringBuilder appendWrapped(StringBuilder buf, String block) {
+        return buf.append("<div class=\"").append(BLOCK_CLASS).append("\">").append(block).append("</div>");
+    }
+
+    /**
+     * Updates the document, previously loaded with the {@link #wrap wrapped} {@code oldBlocks}, so that
+     * it reflects the {@code newBlocks}. Only the blocks following the longest common prefix of both lists
+     * are replaced or inserted. The update isn't attempted when it would require removing blocks, which
+     * doesn't happen when the message is only ever appended to.
+     *
+     * @param document the document to update
+     * @param oldBlocks the blocks the document currently consists of
+     * @param newBlocks the blocks the document should consist of
+     * @return {@code true} if the document has been updated, or {@code false} if it needs a full reload
+     */
+    public static boolean update(HTMLDocument document, List<String> oldBlocks, List<String> newBlocks) {
+        Element body = document.getElement(document.getDefaultRootElement(), StyleConstants.NameAttribute, HTML.Tag.BODY);
+        if (oldBlocks.isEmpty() || body == null || body.getElementCount() != oldBlocks.size())
+            return false;
+
+        int common = 0;
+        int limit = Math.min(oldBlocks.size(), newBlocks.size());
+        while (common < limit && oldBlocks.get(common).equals(newBlocks.get(common)))
+            common++;
+        if (common == newBlocks.size())
+            return common == oldBlocks.size();
+        if (common < oldBlocks.size() - 1)
+            return false;
+
+        StringBuilder changed = new StringBuilder();
+        for (String block : newBlocks.subList(common, newBlocks.size()))
+            appendWrapped(changed, block);
+        try {
+            if (common < oldBlocks.size())
+                document.setOuterHTML(body.getElement(common), changed.toString());
+            else
+                document.insertAfterEnd(body.getElement(common - 1), changed.toString());
+        } catch (BadLocationException | IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private HtmlBlocks() { }
+}
@@ -7,6 +7,8 @@ package com.didalgo.intellij.chatgpt.ui;
 import com.didalgo.gpt3.ModelType;
 import com.didalgo.intellij.chatgpt.chat.*;
 import com.didalgo.intellij.chatgpt.core.ChatCompletionParser;
+import com.didalgo.intellij.chatgpt.core.TokenCountCache;
+import com.didalgo.intellij.chatgpt.text.IncrementalMarkdownRenderer;
 import com.didalgo.intellij.chatgpt.text.TextContent;
 import com.didalgo.intellij.chatgpt.ui.context.stack.TextInputContextEntry;
 import com.didalgo.intellij.chatgpt.ui.context.stack.ListStack;
@@ -138,7 +140,7 @@ public class MainPanel implements ChatMessageListener {
     private int computeTokenCount(TextInputContextEntry info) {
         var tokenCount = 0;
         if (info.getTextContent().isPresent())
-            tokenCount = getModelType().getTokenizer().encode(TextContent.toString(info.getTextContent().get())).size();
+            tokenCount = TokenCountCache.getInstance().countTokens(getModelType(), TextContent.toString(info.getTextContent().get()));
         info.setTokenCount(tokenCount);
 
         SwingUtilities.invokeLater(() -> {
@@ -188,19 +190,19 @@ public class MainPanel implements ChatMessageListener {
         }
 
         TextFragment userMessage = TextFragment.of(event.getUserMessage().getContent());
-        question = new MessageComponent(userMessage, null);
-        answer = new MessageComponent(TextFragment.of("Thinking..."), getModelType());
+        // the answer is needed right away by the response handlers, while the question, possibly
+        // large with the attached code snippets, is rendered off the EDT
+        MessageComponent answer = this.answer = new MessageComponent(TextFragment.of("Thinking..."), getModelType());
+        answerRenderer = new IncrementalMarkdownRenderer();
         SwingUtilities.invokeLater(() -> {
             setSearchText("");
             aroundRequest(true);
-
-            MessageGroupComponent contentPanel = getContentPanel();
-            contentPanel.add(question);
-            contentPanel.add(answer);
         });
+        getContentPanel().addUserMessage(userMessage, answer);
     }
 
-    private volatile MessageComponent question, answer;
+    private volatile MessageComponent answer;
+    private volatile IncrementalMarkdownRenderer answerRenderer;
 
     @Override
     public void exchangeStarted(ChatMessageEvent.Started event) {
@@ -227,7 +229,10 @@ public class MainPanel implements ChatMessageListener {
 
     @Override
     public void responseArriving(ChatMessageEvent.ResponseArriving event) {
-        setContent(event.getPartialResponseChoices());
+        // skip re-rendering on chunks which don't append anything to the displayed choice (role-only or finish chunks),
+        // and render only the appended text, leaving the whole answer unmaterialized until it has arrived
+        event.getDelta(0).filter(delta -> !delta.appendedText().isEmpty()).ifPresent(delta ->
+                answer.setContent(answerRenderer.append(event.getPartialResponseTexts().get(0), delta.appendedText())));
     }
 
     @Override
@@ -239,7 +244,7 @@ public class MainPanel implements ChatMessageListener {
     }
 
     public void setContent(List<ChatMessage> content) {
-        TextFragment parseResult = ChatCompletionParser.parseGPT35TurboWithStream(content);
+        TextFragment parseResult = ChatCompletionParser.parseGPT35TurboWithStream(content, answerRenderer);
         answer.setContent(parseResult);
     }
 
@@ -24,10 +24,13 @@ import com.intellij.util.ui.*;
 import com.didalgo.intellij.chatgpt.ChatGptIcons;
 import com.didalgo.intellij.chatgpt.settings.OpenAISettingsState;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.accessibility.AccessibleContext;
 import javax.swing.*;
 import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
@@ -35,7 +38,9 @@ import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 public class MessageComponent extends JBPanel<MessageComponent> {
 
@@ -44,9 +49,45 @@ public class MessageComponent extends JBPanel<MessageComponent> {
     private final MessagePanel component = new MessagePanel();
 
     private volatile TextFragment text;
+    private final ModelType model;
+
+    /**
+     * Content of the user message rendered in advance, off the EDT, as rendering the messages with
+     * large code snippets attached takes a while.
+     *
+     * @param displayedText the text as displayed
+     * @param document the HTML document of the displayed text
+     */
+    public record RenderedContent(TextFragment displayedText, HTMLDocument document) { }
 
     public MessageComponent(TextFragment text, ModelType model) {
+        this(text, model, null);
+    }
+
+    /**
+     * Creates the component of the user message.
+     *
+     * @param text the user message
+     * @return the component
+     */
+    public static MessageComponent forUserMessage(TextFragment text) {
+        return new MessageComponent(text, null, null);
+    }
+
+    /**
+     * Creates the component of the user message, showing the content rendered in advance.
+     *
+     * @param text the user message
+     * @param content the content rendered by {@link #renderUserMessage(TextFragment)}
+     * @return the component
+     */
+    public static MessageComponent forUserMessage(TextFragment text, RenderedContent content) {
+        return new MessageComponent(text, null, content);
+    }
+
+    private MessageComponent(TextFragment text, ModelType model, @Nullable RenderedContent renderedContent) {
         this.text = text;
+        this.model = model;
         var fromUser = (model == null);
         setDoubleBuffered(true);
         setOpaque(true);
@@ -74,7 +115,7 @@ public class MessageComponent extends JBPanel<MessageComponent> {
         JPanel centerPanel = new JPanel(new VerticalLayout(JBUI.scale(0)));
         centerPanel.setOpaque(false);
         centerPanel.setBorder(JBUI.Borders.emptyLeft(JBUI.scale(5)));
-        centerPanel.add(createContentComponent(text, fromUser));
+        centerPanel.add(createContentComponent(text, fromUser, renderedContent));
         add(centerPanel, BorderLayout.CENTER);
 
         JPanel actionPanel = new JPanel(new BorderLayout());
@@ -102,11 +143,27 @@ public class MessageComponent extends JBPanel<MessageComponent> {
         return text;
     }
 
+    public ModelType getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the factory of new components showing the current content of this one, used to recreate
+     * the message after its component has been dropped while scrolled out of view.
+     *
+     * @return the component factory
+     */
+    public Supplier<MessageComponent> toFactory() {
+        TextFragment text = getText();
+        ModelType model = getModel();
+        return () -> new MessageComponent(text, model);
+    }
+
     public String toDisplayText(TextFragment text, boolean fromUser) {
-        if (!fromUser)
-            return text.toHtml();
+        return fromUser? toUserDisplayText(text.markdown()) : text.toHtml();
+    }
 
-        String markdown = text.markdown();
+    private static String toUserDisplayText(String markdown) {
         StringBuilder buf = new StringBuilder(markdown.length());
         char ch;
         boolean onLineStart = true;
@@ -143,7 +200,29 @@ public class MessageComponent extends JBPanel<MessageComponent> {
         return buf.toString();
     }
 
+    /**
+     * Renders the user message, i.e. builds its HTML document, without touching any component, so
+     * that it may be done off the EDT.
+     *
+     * @param text the user message
+     * @return the rendered content
+     */
+    public static RenderedContent renderUserMessage(TextFragment text) throws IOException, BadLocationException {
+        var displayedText = toUserDisplayFragment(text);
+        var editorKit = createHtmlEditorKit((e, v) -> v, false);
+        editorKit.getStyleSheet().addRule("body {white-space:pre-wrap}");
+        return new RenderedContent(displayedText, MessagePanel.createDocument(editorKit, displayedText));
+    }
+
+    private static TextFragment toUserDisplayFragment(TextFragment text) {
+        return TextFragment.of(text.markdown(), CodeSnippetManipulator.makeCodeSnippetBlocksCollapsible(toUserDisplayText(text.markdown())));
+    }
+
     public Component createContentComponent(TextFragment content, boolean fromUser) {
+        return createContentComponent(content, fromUser, null);
+    }
+
+    private Component createContentComponent(TextFragment content, boolean fromUser, @Nullable RenderedContent renderedContent) {
 
         component.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, java.lang.Boolean.TRUE);
         component.setContentType("text/html; charset=UTF-8");
@@ -154,7 +233,10 @@ public class MessageComponent extends JBPanel<MessageComponent> {
         if (fromUser)
             editorKit.getStyleSheet().addRule("body {white-space:pre-wrap}");
         component.putClientProperty(AccessibleContext.ACCESSIBLE_NAME_PROPERTY, getText().markdown());
-        component.updateMessage(fromUser? TextFragment.of(content.markdown(), CodeSnippetManipulator.makeCodeSnippetBlocksCollapsible(toDisplayText(content, true))) : content);
+        if (renderedContent != null)
+            component.setMessage(renderedContent.displayedText(), renderedContent.document());
+        else
+            component.updateMessage(fromUser? toUserDisplayFragment(content) : content);
         component.setEditable(false);
         if (component.getCaret() != null) {
             component.setCaretPosition(0);
@@ -167,8 +249,14 @@ public class MessageComponent extends JBPanel<MessageComponent> {
     }
 
     public HTMLEditorKit configureHtmlEditorKit2(@NotNull JEditorPane editorPane, boolean notificationColor) {
+        HTMLEditorKit kit = createHtmlEditorKit((e, v) -> component.createView(e, v), notificationColor);
+        editorPane.setEditorKit(kit);
+        return kit;
+    }
+
+    private static HTMLEditorKit createHtmlEditorKit(ExtendableHTMLViewFactory.Extension viewFactory, boolean notificationColor) {
         HTMLEditorKit kit = new HTMLEditorKitBuilder()
-                .withViewFactoryExtensions((e, v) -> component.createView(e, v), ExtendableHTMLViewFactory.Extensions.WORD_WRAP)
+                .withViewFactoryExtensions(viewFactory, ExtendableHTMLViewFactory.Extensions.WORD_WRAP)
                 .withFontResolver((defaultFont, attributeSet) -> {
                     if ("a".equalsIgnoreCase(String.valueOf(attributeSet.getAttribute(AttributeSet.NameAttribute))))
                         return UIUtil.getLabelFont();
@@ -178,7 +266,6 @@ public class MessageComponent extends JBPanel<MessageComponent> {
         String color = ColorUtil.toHtmlColor(notificationColor ? getLinkButtonForeground() : JBUI.CurrentTheme.Link.Foreground.ENABLED);
         kit.getStyleSheet().addRule("a {color: " + color + "}");
         kit.getStyleSheet().addRule("p {margin:4px 0}");
-        editorPane.setEditorKit(kit);
         return kit;
     }
 
@@ -6,6 +6,8 @@ package com.didalgo.intellij.chatgpt.ui;
 
 import com.didalgo.intellij.chatgpt.SystemMessageHolder;
 import com.didalgo.intellij.chatgpt.chat.ChatLink;
+import com.didalgo.intellij.chatgpt.chat.ChatMessageUtils;
+import com.didalgo.intellij.chatgpt.chat.ConversationLog;
 import com.didalgo.intellij.chatgpt.text.TextFragment;
 import com.didalgo.intellij.chatgpt.util.ScrollingTools;
 import com.intellij.icons.AllIcons;
@@ -13,18 +15,22 @@ import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
 import com.intellij.openapi.actionSystem.impl.ActionToolbarImpl;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.NullableComponent;
+import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.ui.Gray;
 import com.intellij.ui.HideableTitledPanel;
 import com.intellij.ui.JBColor;
+import com.intellij.ui.SimpleListCellRenderer;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBPanel;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.ui.components.labels.LinkLabel;
 import com.intellij.ui.components.panels.NonOpaquePanel;
-import com.intellij.ui.components.panels.VerticalLayout;
+import com.intellij.util.text.DateFormatUtil;
 import com.intellij.util.ui.JBFont;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
@@ -34,11 +40,14 @@ import org.jetbrains.annotations.NotNull;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.List;
 
 import static com.didalgo.intellij.chatgpt.settings.OpenAISettingsState.BASE_PROMPT;
 
 public class MessageGroupComponent extends JBPanel<MessageGroupComponent> implements NullableComponent, SystemMessageHolder {
-    private final JPanel myList = new JPanel(new VerticalLayout(0));
+    private static final Logger LOG = Logger.getInstance(MessageGroupComponent.class);
+
+    private final VirtualizedMessageList myList = new VirtualizedMessageList();
     private final JBScrollPane myScrollPane = new JBScrollPane(myList, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
                                       ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
     private int myScrollValue = 0;
@@ -121,7 +130,7 @@ public class MessageGroupComponent extends JBPanel<MessageGroupComponent> implem
         newChat.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                myList.removeAll();
+                myList.clear();
                 addAssistantTipsIfEnabled(false);
                 myList.updateUI();
                 chatLink.getConversationContext().clear();
@@ -130,7 +139,21 @@ public class MessageGroupComponent extends JBPanel<MessageGroupComponent> implem
 
         newChat.setFont(JBFont.label());
         newChat.setBorder(JBUI.Borders.emptyRight(20));
-        panel.add(newChat, BorderLayout.EAST);
+
+        LinkLabel<String> history = new LinkLabel<>("History", null);
+        history.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                showConversationHistory(history);
+            }
+        });
+        history.setFont(JBFont.label());
+        history.setBorder(JBUI.Borders.emptyRight(10));
+
+        JPanel links = new NonOpaquePanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        links.add(history);
+        links.add(newChat);
+        panel.add(links, BorderLayout.EAST);
         mainPanel.add(panel, BorderLayout.NORTH);
 
         myList.setOpaque(true);
@@ -145,13 +168,57 @@ public class MessageGroupComponent extends JBPanel<MessageGroupComponent> implem
         });
 
         addAssistantTipsIfEnabled(true);
+
+        // index the conversation history in advance, so that it's ready when browsed
+        var conversationLog = ConversationLog.getInstance(project);
+        ApplicationManager.getApplication().executeOnPooledThread(conversationLog::load);
+    }
+
+    protected void showConversationHistory(JComponent anchor) {
+        var application = ApplicationManager.getApplication();
+        var conversationLog = ConversationLog.getInstance(project);
+        var modelPage = chatLink.getConversationContext().getModelPage();
+        application.executeOnPooledThread(() -> {
+            var conversations = conversationLog.getConversations().stream()
+                    .filter(conversation -> modelPage.equals(conversation.modelPage()))
+                    .toList();
+            application.invokeLater(() -> {
+                if (conversations.isEmpty()) {
+                    JBPopupFactory.getInstance().createMessage("No earlier conversations").showUnderneathOf(anchor);
+                    return;
+                }
+                JBPopupFactory.getInstance().createPopupChooserBuilder(conversations)
+                        .setTitle("Conversation History")
+                        .setRenderer(SimpleListCellRenderer.<ConversationLog.ConversationSummary>create("", conversation ->
+                                DateFormatUtil.formatPrettyDateTime(conversation.lastTime().toEpochMilli()) + "  " + conversation.title()))
+                        .setItemChosenCallback(conversation -> application.executeOnPooledThread(() ->
+                                restoreConversation(conversation.id(), conversationLog.readConversation(conversation.id()))))
+                        .createPopup()
+                        .showUnderneathOf(anchor);
+            });
+        });
+    }
+
+    protected void restoreConversation(long conversationId, List<ConversationLog.LoggedMessage> loggedMessages) {
+        var messages = loggedMessages.stream().map(ConversationLog.LoggedMessage::message).toList();
+        var conversationContext = chatLink.getConversationContext();
+        conversationContext.restore(conversationId, messages);
+
+        var modelType = conversationContext.getModelType();
+        SwingUtilities.invokeLater(() -> {
+            myList.clear();
+            addSeparator(myList);
+            for (var message : messages)
+                if (!ChatMessageUtils.isRoleSystem(message))
+                    add(new MessageComponent(TextFragment.of(message.getContent()), ChatMessageUtils.isRoleUser(message)? null : modelType));
+        });
     }
 
-    public void addSeparator(JComponent comp) {
+    public void addSeparator(VirtualizedMessageList list) {
         SwingUtilities.invokeLater(() -> {
             JSeparator separator = new JSeparator();
             separator.setForeground(JBColor.border());
-            comp.add(separator);
+            list.addMessage(separator);
             updateLayout();
             invalidate();
             validate();
@@ -166,7 +233,7 @@ public class MessageGroupComponent extends JBPanel<MessageGroupComponent> implem
         if (!firstUse && introEnabled == null)
             OpenAISettingsState.getInstance().setEnableInitialMessage(introEnabled = false);
         if (!Boolean.FALSE.equals(introEnabled))
-            myList.add(createAssistantTips());
+            myList.addMessage(createAssistantTips());
     }
 
     protected MessageComponent createAssistantTips() {
@@ -185,7 +252,7 @@ public class MessageGroupComponent extends JBPanel<MessageGroupComponent> implem
 
     public void add(MessageComponent messageComponent) {
         SwingUtilities.invokeLater(() -> {
-            myList.add(messageComponent);
+            myList.addMessage(messageComponent);
             updateLayout();
             scrollToBottom();
             invalidate();
@@ -194,17 +261,52 @@ public class MessageGroupComponent extends JBPanel<MessageGroupComponent> implem
         });
     }
 
+    /**
+     * Adds the user message followed by the answer to it. The HTML document of the user message,
+     * costly to build for the large code snippets attached, is built on a pooled thread, while its
+     * place in the conversation is held by an empty placeholder, so that the messages stay in order,
+     * and the user message is dropped if the conversation is cleared meanwhile.
+     *
+     * @param userMessage the user message
+     * @param answer the answer, added right away, as the response may update it any time
+     */
+    public void addUserMessage(TextFragment userMessage, MessageComponent answer) {
+        JComponent placeholder = new NonOpaquePanel();
+        SwingUtilities.invokeLater(() -> {
+            myList.addMessage(placeholder);
+            myList.addMessage(answer);
+            updateLayout();
+            scrollToBottom();
+            invalidate();
+            validate();
+            repaint();
+        });
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            MessageComponent.RenderedContent content = null;
+            try {
+                content = MessageComponent.renderUserMessage(userMessage);
+            } catch (Exception e) {
+                LOG.warn("Unable to render the user message in background", e);
+            }
+            var renderedContent = content;
+            SwingUtilities.invokeLater(() -> {
+                // fall back to rendering the message on the EDT, as before, not to lose it
+                var message = (renderedContent != null)? MessageComponent.forUserMessage(userMessage, renderedContent) : MessageComponent.forUserMessage(userMessage);
+                if (myList.replaceMessage(placeholder, message)) {
+                    updateLayout();
+                    scrollToBottom();
+                    repaint();
+                }
+            });
+        });
+    }
+
     public void scrollToBottom() {
         ScrollingTools.scrollToBottom(myScrollPane);
     }
 
     public void updateLayout() {
-        LayoutManager layout = myList.getLayout();
-        int componentCount = myList.getComponentCount();
-        for (int i = 0; i < componentCount; i++) {
-            layout.removeLayoutComponent(myList.getComponent(i));
-            layout.addLayoutComponent(null, myList.getComponent(i));
-        }
+        myList.revalidate();
     }
 
     @Override
@@ -219,15 +321,7 @@ public class MessageGroupComponent extends JBPanel<MessageGroupComponent> implem
 
     @Override
     public boolean isVisible() {
-        if (super.isVisible()) {
-            int count = myList.getComponentCount();
-            for (int i = 0 ; i < count ; i++) {
-                if (myList.getComponent(i).isVisible()) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return super.isVisible() && myList.getMessageCount() > 0;
     }
 
     @Override
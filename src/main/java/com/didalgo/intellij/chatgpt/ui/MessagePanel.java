@@ -17,11 +17,17 @@ import org.jetbrains.annotations.NotNull;
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.text.*;
 import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
 import java.awt.*;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
 
 public class MessagePanel extends HtmlPanel implements MessageRenderer {
 
     private volatile TextFragment text;
+    private List<String> displayedBlocks = List.of();
 
     public MessagePanel() {
         setEditorKit(new HTMLEditorKitBuilder()
@@ -46,7 +52,25 @@ public class MessagePanel extends HtmlPanel implements MessageRenderer {
 
     @Override
     protected @NotNull @Nls String getBody() {
-        return (text == null)? "" : text.toHtml();
+        return (text == null)? "" : HtmlBlocks.wrap(text.htmlBlocks());
+    }
+
+    /**
+     * Builds the HTML document showing the given message, the same way as {@link #update()} does, but
+     * without touching any panel, so that it may be done off the EDT and given to
+     * {@link #setMessage(TextFragment, HTMLDocument)} afterwards.
+     *
+     * @param kit the editor kit of the panel the document will be shown in
+     * @param text the message
+     * @return the document
+     */
+    static HTMLDocument createDocument(HTMLEditorKit kit, TextFragment text) throws IOException, BadLocationException {
+        var document = (HTMLDocument) kit.createDefaultDocument();
+        document.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+        String html = "<html><head>" + UIUtil.getCssFontDeclaration(UIUtil.getLabelFont()) + "</head><body>"
+                + HtmlBlocks.wrap(text.htmlBlocks()) + "</body></html>";
+        kit.read(new StringReader(html), document, 0);
+        return document;
     }
 
     @Override
@@ -60,8 +84,26 @@ public class MessagePanel extends HtmlPanel implements MessageRenderer {
             HyperlinkHandler.handleOrElse(e, super::hyperlinkUpdate);
     }
 
+    /**
+     * Shows the message with the document built in advance by {@link #createDocument(HTMLEditorKit, TextFragment)}.
+     *
+     * @param message the message
+     * @param document the document of the message
+     */
+    public void setMessage(TextFragment message, HTMLDocument document) {
+        this.text = message;
+        this.displayedBlocks = message.htmlBlocks();
+        setDocument(document);
+    }
+
     public void updateMessage(TextFragment updateMessage) {
+        List<String> oldBlocks = displayedBlocks;
+        List<String> newBlocks = updateMessage.htmlBlocks();
         this.text = updateMessage;
-        update();
+        this.displayedBlocks = newBlocks;
+
+        // replace only the changed blocks when possible, keeping the views of the unchanged ones alive
+        if (!(getDocument() instanceof HTMLDocument document) || !HtmlBlocks.update(document, oldBlocks, newBlocks))
+            update();
     }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui;
+
+import com.intellij.util.ui.JBUI;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Vertical list of conversation messages, which materializes components only for the messages
+ * within the visible area, plus a small overscan. Components of messages scrolled far enough away
+ * are dropped, together with their HTML documents and views, and recreated when scrolled back into
+ * view. Heights of all messages are kept in the {@link HeightIndex}, with the last measured height
+ * used for dropped ones.
+ * <p>
+ * The list is meant to be the view of a scroll pane, and is accessed from the EDT only.
+ */
+public class VirtualizedMessageList extends JPanel implements Scrollable {
+
+    /** The number of messages kept materialized above and below the visible area. */
+    private static final int OVERSCAN = 2;
+    /** The number of trailing messages never dropped, as these may be still updated by the ongoing exchange. */
+    private static final int PINNED_TAIL = 2;
+
+    private final List<Item> items = new ArrayList<>();
+    private final HeightIndex heights = new HeightIndex();
+    private final ChangeListener viewportListener = e -> {
+        doLayout();
+        repaint();
+    };
+
+    private static final class Item {
+        private JComponent component;
+        private Supplier<? extends JComponent> factory;
+
+        Item(JComponent component) {
+            this.component = component;
+        }
+    }
+
+    public VirtualizedMessageList() {
+        super(null);
+    }
+
+    public void addMessage(JComponent component) {
+        items.add(new Item(component));
+        heights.add(component.getPreferredSize().height);
+        add(component);
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Replaces the message with another one, if the message is still on the list.
+     *
+     * @param message the message to replace, which must not be dropped when scrolled out of view
+     * @param replacement the replacement
+     * @return {@code true} if replaced, or {@code false} if the message was removed meanwhile
+     */
+    public boolean replaceMessage(JComponent message, JComponent replacement) {
+        for (int i = items.size() - 1; i >= 0; i--) {
+            Item item = items.get(i);
+            if (item.component == message) {
+                remove(message);
+                item.component = replacement;
+                heights.set(i, replacement.getPreferredSize().height);
+                add(replacement);
+                revalidate();
+                repaint();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getMessageCount() {
+        return items.size();
+    }
+
+    public void clear() {
+        items.clear();
+        heights.clear();
+        removeAll();
+        revalidate();
+        repaint();
+    }
+
+    @Override
+    public void doLayout() {
+        int count = items.size();
+        if (count == 0)
+            return;
+
+        Insets insets = getInsets();
+        int width = Math.max(0, getWidth() - insets.left - insets.right);
+        Rectangle visible = getVisibleRect();
+        int first = Math.max(0, heights.indexAt(visible.y - insets.top) - OVERSCAN);
+        int last = Math.min(count - 1, heights.indexAt(visible.y + visible.height - insets.top) + OVERSCAN);
+
+        boolean heightsChanged = false;
+        for (int i = 0; i < count; i++) {
+            Item item = items.get(i);
+            boolean inRange = (i >= first && i <= last) || i >= count - PINNED_TAIL;
+            if (!inRange) {
+                if (item.component != null)
+                    drop(item);
+                continue;
+            }
+            if (item.component == null) {
+                item.component = item.factory.get();
+                item.factory = null;
+                add(item.component);
+            }
+
+            JComponent comp = item.component;
+            comp.setSize(width, comp.getHeight());
+            int height = comp.getPreferredSize().height;
+            if (height != heights.get(i)) {
+                heights.set(i, height);
+                heightsChanged = true;
+            }
+            comp.setBounds(insets.left, insets.top + heights.offsetOf(i), width, height);
+        }
+        if (heightsChanged)
+            revalidate();
+    }
+
+    private void drop(Item item) {
+        Supplier<? extends JComponent> factory = createFactory(item.component);
+        if (factory != null) {
+            remove(item.component);
+            item.component = null;
+            item.factory = factory;
+        }
+    }
+
+    /**
+     * Creates the factory of the replacement for the given component, when it gets dropped.
+     *
+     * @param component the component about to be dropped
+     * @return the factory, or {@code null} if the component should be kept materialized
+     */
+    protected Supplier<? extends JComponent> createFactory(JComponent component) {
+        return (component instanceof MessageComponent message)? message.toFactory() : null;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Insets insets = getInsets();
+        return new Dimension(getWidth(), insets.top + heights.totalHeight() + insets.bottom);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport viewport)
+            viewport.addChangeListener(viewportListener);
+    }
+
+    @Override
+    public void removeNotify() {
+        if (getParent() instanceof JViewport viewport)
+            viewport.removeChangeListener(viewportListener);
+        super.removeNotify();
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return JBUI.scale(16);
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL)? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        // fill the viewport when the conversation is too short to be scrolled
+        return getParent() instanceof JViewport viewport && viewport.getHeight() > getPreferredSize().height;
+    }
+}
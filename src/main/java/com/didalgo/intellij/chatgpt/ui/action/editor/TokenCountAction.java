@@ -5,7 +5,7 @@
 package com.didalgo.intellij.chatgpt.ui.action.editor;
 
 import com.didalgo.gpt3.ModelType;
-import com.didalgo.gpt3.TokenCount;
+import com.didalgo.intellij.chatgpt.core.TokenCountCache;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
@@ -45,8 +45,8 @@ public class TokenCountAction extends AnAction {
             // Strip the text dropping leading and trailing whitespaces and newlines
             text = text.strip();
 
-            // Count the number of tokens using TokenCount.getInstance().fromString(text)
-            int tokenCount = TokenCount.fromString(text, ModelType.GPT_3_5_TURBO.getTokenizer());
+            // Count the number of tokens, reusing the count if the same text was counted before
+            int tokenCount = TokenCountCache.getInstance().countTokens(ModelType.GPT_3_5_TURBO, text);
             int lineCount = 1 + StringUtil.countNewLines(text);
             int charCount = text.length();
 
@@ -32,33 +32,15 @@ public class CollapsiblePanelFactory {
         JXCollapsiblePane collapsiblePane = new JXCollapsiblePane();
         collapsiblePane.setCollapsed(true);
 
-        JEditorPane contentPane = new MessagePanel();
-        contentPane.putClientProperty(HONOR_COLLAPSIBLE_PANELS, Boolean.FALSE);
-        // Get the content of the Element object
-        StringWriter out = new StringWriter();
-        try {
-            int startOffset = elem.getStartOffset();
-            int length = elem.getEndOffset() - startOffset;
-            renderer.getEditorKit().write(out, elem.getDocument(), elem.getStartOffset(), length);
-        } catch (IOException | BadLocationException ignore) {
-
-        }
-
-        // Set the content of the JTextPane in HTML format
-        contentPane.setContentType("text/html; charset=UTF-8");
-        contentPane.setText(out.toString());
-        contentPane.setOpaque(false);
-        contentPane.setBorder(null);
-        contentPane.setEditable(false);
-
         JButton toggleButton = new JButton(collapsiblePane.getActionMap().get(JXCollapsiblePane.TOGGLE_ACTION));
         toggleButton.setText("" + attrs.getAttribute(HTML.Attribute.TITLE));
         toggleButton.setOpaque(false);
         toggleButton.setEnabled(true);
         toggleButton.setFocusable(false);
         toggleButton.addActionListener(event -> {
-            if (contentPane.getParent() == null)
-                collapsiblePane.add(contentPane);
+            // the content is rendered on first expand, as most of the snippets are never expanded
+            if (collapsiblePane.getContentPane().getComponentCount() == 0)
+                collapsiblePane.add(createContentPane(renderer, elem));
         });
 
         JPanel viewPanel = new JPanel(new BorderLayout()) {
@@ -76,4 +58,26 @@ public class CollapsiblePanelFactory {
         viewPanel.add(collapsiblePane, BorderLayout.CENTER);
         return new JComponentView(elem, viewPanel);
     }
+
+    private static JEditorPane createContentPane(MessageRenderer renderer, Element elem) {
+        JEditorPane contentPane = new MessagePanel();
+        contentPane.putClientProperty(HONOR_COLLAPSIBLE_PANELS, Boolean.FALSE);
+        // Get the content of the Element object
+        StringWriter out = new StringWriter();
+        try {
+            int startOffset = elem.getStartOffset();
+            int length = elem.getEndOffset() - startOffset;
+            renderer.getEditorKit().write(out, elem.getDocument(), startOffset, length);
+        } catch (IOException | BadLocationException ignore) {
+
+        }
+
+        // Set the content of the JTextPane in HTML format
+        contentPane.setContentType("text/html; charset=UTF-8");
+        contentPane.setText(out.toString());
+        contentPane.setOpaque(false);
+        contentPane.setBorder(null);
+        contentPane.setEditable(false);
+        return contentPane;
+    }
 }
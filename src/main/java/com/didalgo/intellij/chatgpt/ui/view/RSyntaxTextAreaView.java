@@ -30,7 +30,6 @@ import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.codeStyle.CodeStyleManager;
 import com.intellij.ui.AnActionButton;
 import com.intellij.util.IconUtil;
-import com.intellij.util.ui.JBUI;
 import org.fife.ui.rsyntaxtextarea.*;
 import org.fife.ui.rtextarea.RTextScrollPane;
 import org.jetbrains.annotations.NonNls;
@@ -42,12 +41,18 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.*;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
 public class RSyntaxTextAreaView extends ComponentView {
 
     private static final Logger log = Logger.getInstance(RSyntaxTextAreaView.class);
+    private static final int MAX_POOLED_COMPONENTS = 16;
+    /** The components released by removed views, ready for reuse, accessed from the EDT only. */
+    private static final Deque<CodeBlockScrollPane> componentPool = new ArrayDeque<>();
     private static Theme defaultTheme;
 
     private Language language;
@@ -83,7 +88,18 @@ public class RSyntaxTextAreaView extends ComponentView {
 
     protected void updateText(RTextScrollPane scrollPane, RSyntaxTextArea textArea) {
         try {
-            textArea.setText(getText());
+            String newText = getText();
+            String oldText = (scrollPane instanceof CodeBlockScrollPane pane)? pane.text : null;
+            if (newText.equals(oldText))
+                return;
+
+            if (oldText != null && !oldText.isEmpty() && newText.startsWith(oldText))
+                textArea.append(newText.substring(oldText.length())); // only the appended lines get tokenized
+            else
+                textArea.setText(newText);
+
+            if (scrollPane instanceof CodeBlockScrollPane pane)
+                pane.text = newText;
         } catch (BadLocationException e) {
             e.printStackTrace();
         }
@@ -120,7 +136,68 @@ public class RSyntaxTextAreaView extends ComponentView {
         }
     }
 
+    @Override
+    public void setParent(View parent) {
+        super.setParent(parent);
+        if (parent == null) {
+            if (SwingUtilities.isEventDispatchThread())
+                releaseComponent();
+            else
+                SwingUtilities.invokeLater(this::releaseComponent);
+        }
+    }
+
+    /**
+     * Returns the component of this view, which has just been removed from the view hierarchy,
+     * to the pool, so that it can be reused by another view of a code block. Removed views are
+     * discarded and never get attached again, in particular when the message document is updated.
+     */
+    protected void releaseComponent() {
+        if (getParent() == null && getComponent() instanceof CodeBlockScrollPane pane && pane.owner == this) {
+            pane.owner = null;
+            if (componentPool.size() < MAX_POOLED_COMPONENTS)
+                componentPool.addFirst(pane);
+        }
+    }
+
+    /**
+     * Takes the pooled component for the code block with the given text, preferring the one already
+     * holding a prefix of the text, typically released by the previous view of the same, still
+     * streamed, code block.
+     */
+    private static @Nullable CodeBlockScrollPane acquirePooledComponent(String text) {
+        for (Iterator<CodeBlockScrollPane> iter = componentPool.iterator(); iter.hasNext(); ) {
+            CodeBlockScrollPane pane = iter.next();
+            if (text.startsWith(pane.text)) {
+                iter.remove();
+                return pane;
+            }
+        }
+        return componentPool.pollFirst();
+    }
+
     protected Component createComponent0() {
+        String text;
+        try {
+            text = getText();
+        } catch (BadLocationException e) {
+            text = "";
+        }
+
+        CodeBlockScrollPane scrollPane = acquirePooledComponent(text);
+        if (scrollPane == null) {
+            scrollPane = createScrollPane();
+        } else if (scrollPane.getTextArea() instanceof RSyntaxTextArea textArea) {
+            if (!language.mimeType().equals(textArea.getSyntaxEditingStyle()))
+                textArea.setSyntaxEditingStyle(language.mimeType());
+            textArea.discardAllEdits();
+        }
+        scrollPane.owner = this;
+        updateText(scrollPane, (RSyntaxTextArea) scrollPane.getTextArea());
+        return scrollPane;
+    }
+
+    protected CodeBlockScrollPane createScrollPane() {
         RSyntaxTextArea textArea = new MyRSyntaxTextArea();
         textArea.setUI(new RSyntaxTextAreaUIEx(textArea));
         textArea.setSyntaxEditingStyle(language.mimeType());
@@ -136,18 +213,7 @@ public class RSyntaxTextAreaView extends ComponentView {
         if (theme != null)
             theme.apply(textArea);
 
-        RTextScrollPane scrollPane = new RTextScrollPane(textArea) {
-            @Override
-            public Dimension getPreferredSize() {
-                Container cont = RSyntaxTextAreaView.this.getContainer();
-                if (cont != null && (getWidth() == 0 || getWidth() > cont.getWidth())) {
-                    setSize(RSyntaxTextAreaView.this.getContainer().getWidth(), Integer.MAX_VALUE / 2);
-                    doLayout();
-                    getViewport().doLayout();
-                }
-                return super.getPreferredSize();
-            }
-        };
+        CodeBlockScrollPane scrollPane = new CodeBlockScrollPane(textArea);
         scrollPane.setLineNumbersEnabled(false);
         scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER);
         scrollPane.setBorder(BorderFactory.createEmptyBorder(6, 0, 5, 0));
@@ -156,30 +222,6 @@ public class RSyntaxTextAreaView extends ComponentView {
         for (MouseWheelListener listener : scrollPane.getMouseWheelListeners())
             scrollPane.removeMouseWheelListener(listener);
 
-        Icon icon1 = IconUtil.scale(IconLoader.getIcon("/icons/expui/action/copy_dark.svg", RSyntaxTextArea.class), null, 1.25f);
-        JButton copyAction = new JButton(icon1);
-        copyAction.setMargin(JBUI.emptyInsets());
-        copyAction.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        copyAction.setFocusable(false);
-
-        ActionGroup actionGroup = new ActionGroup() {
-            @Override
-            public AnAction @NotNull [] getChildren(@Nullable AnActionEvent e) {
-                return new AnAction[] { new MyCopyAction(icon1) };
-            }
-        };
-
-        Presentation presentation = new Presentation();
-        presentation.setIcon(AllIcons.Actions.More);
-        presentation.putClientProperty(ActionButton.HIDE_DROPDOWN_ICON, Boolean.TRUE);
-        ActionButton myCorner = new ActionButton(actionGroup, presentation, ActionPlaces.UNKNOWN, new Dimension(20, 20)) {
-            @Override
-            protected DataContext getDataContext() {
-                return DataManager.getInstance().getDataContext(this);
-            }
-        };
-        myCorner.setNoIconsInPopup(true);
-
         JComponent corner = new CodeBlockActionPanel(textArea);
 
         textArea.add(corner);
@@ -198,10 +240,29 @@ public class RSyntaxTextAreaView extends ComponentView {
             }
         });
 
-        updateText(scrollPane, textArea);
         return scrollPane;
     }
 
+    protected static class CodeBlockScrollPane extends RTextScrollPane {
+        private RSyntaxTextAreaView owner;
+        private String text = "";
+
+        protected CodeBlockScrollPane(RSyntaxTextArea textArea) {
+            super(textArea);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            Container cont = (owner == null)? null : owner.getContainer();
+            if (cont != null && (getWidth() == 0 || getWidth() > cont.getWidth())) {
+                setSize(cont.getWidth(), Integer.MAX_VALUE / 2);
+                doLayout();
+                getViewport().doLayout();
+            }
+            return super.getPreferredSize();
+        }
+    }
+
     public static class CodeBlockActionPanel extends JPanel {
         public static Icon COPY_ICON_16x16_DARK = IconLoader.getIcon("/icons/expui/action/copy_dark.svg", RSyntaxTextArea.class);
         public static Icon COPY_ICON_22x22_DARK = IconUtil.scale(COPY_ICON_16x16_DARK, null, 1.25f);
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.gpt3.ModelType;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.didalgo.intellij.chatgpt.chat.ChatMessageUtils.countTokens;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatLinkStateTest {
+
+    final ModelType model = ModelType.GPT_3_5_TURBO;
+    final ChatLinkState state = new ChatLinkState(null);
+
+    @Test
+    void dropOldestMessagesToStayWithinTokenLimit_removes_as_many_messages_as_removing_one_by_one() {
+        for (int maxTokens = 30; maxTokens <= 600; maxTokens += 30) {
+            var messages = createConversation();
+            var expected = new ArrayList<>(messages);
+            int expectedRemoved = 0;
+            while (countTokens(expected, model.getTokenizer(), model.getChatFormatDescriptor()) > maxTokens*2/3 && expected.size() > 2) {
+                expected.remove(1);
+                expectedRemoved++;
+            }
+
+            int removed = state.dropOldestMessagesToStayWithinTokenLimit(messages, maxTokens, model.getTokenizer(), model.getChatFormatDescriptor());
+            assertEquals(expectedRemoved, removed, "with maxTokens " + maxTokens);
+            assertEquals(expected.subList(2, expected.size()), messages.subList(2, messages.size()), "with maxTokens " + maxTokens);
+        }
+    }
+
+    @Test
+    void dropOldestMessagesToStayWithinTokenLimit_truncates_oldest_retained_message_exactly_to_limit() {
+        var tokenizer = model.getTokenizer();
+        var formatDescriptor = model.getChatFormatDescriptor();
+        String longContent = "word ".repeat(500) + "the end";
+        var messages = new ArrayList<>(List.of(
+                new ChatMessage(ChatMessageRole.SYSTEM.value(), "You are a helpful assistant."),
+                new ChatMessage(ChatMessageRole.USER.value(), longContent)));
+        int maxTokens = 300;
+
+        int removed = state.dropOldestMessagesToStayWithinTokenLimit(messages, maxTokens, tokenizer, formatDescriptor);
+        assertEquals(0, removed);
+        assertEquals(2, messages.size());
+        String truncated = messages.get(1).getContent();
+        assertTrue(truncated.startsWith(ChatMessageUtils.TRUNCATION_MARKER), truncated);
+        assertTrue(truncated.endsWith("word the end"), truncated);
+
+        int tokenCount = countTokens(messages, tokenizer, formatDescriptor);
+        assertTrue(tokenCount <= maxTokens*2/3, "Token count " + tokenCount + " should fit the limit");
+        assertTrue(tokenCount >= maxTokens*2/3 - 2, "Token count " + tokenCount + " should be packed to the limit");
+    }
+
+    private static List<ChatMessage> createConversation() {
+        var messages = new ArrayList<ChatMessage>();
+        messages.add(new ChatMessage(ChatMessageRole.SYSTEM.value(), "You are a helpful assistant."));
+        for (int i = 0; i < 10; i++) {
+            messages.add(new ChatMessage(ChatMessageRole.USER.value(), "Question number " + i + " about something"));
+            messages.add(new ChatMessage(ChatMessageRole.ASSISTANT.value(), "Answer number " + i + " which is quite a bit longer than the question"));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatResponseAccumulatorTest {
+
+    @Test
+    void append_gives_views_of_accumulated_text_which_remain_unchanged_afterwards() {
+        var accumulator = new ChatResponseAccumulator();
+        var first = accumulator.append(0, "Hello");
+        var second = accumulator.append(0, ", ");
+        assertEquals("Hello, ", second.toString());
+        var third = accumulator.append(0, "World!");
+
+        assertEquals("Hello", first.toString());
+        assertEquals("Hello, ", second.toString());
+        assertEquals("Hello, World!", third.toString());
+        assertEquals('W', third.charAt(7));
+        assertEquals('!', third.charAt(12));
+        assertEquals(5, first.length());
+    }
+
+    @Test
+    void snapshot_gives_choices_ordered_by_index() {
+        var accumulator = new ChatResponseAccumulator();
+        accumulator.append(1, "B");
+        accumulator.append(0, "A");
+        accumulator.append(1, null);
+        accumulator.append(1, "b");
+
+        var messages = accumulator.snapshot().toMessages();
+        assertEquals(2, messages.size());
+        assertEquals("A", messages.get(0).getContent());
+        assertEquals("Bb", messages.get(1).getContent());
+        assertEquals("assistant", messages.get(0).getRole());
+    }
+
+    @Test
+    void charAt_is_consistent_with_toString_for_many_chunks() {
+        var accumulator = new ChatResponseAccumulator();
+        var expected = new StringBuilder();
+        ChatResponseAccumulator.ChoiceText text = null;
+        for (int i = 0; i < 100; i++) {
+            String chunk = "chunk" + i + ";";
+            expected.append(chunk);
+            text = accumulator.append(0, chunk);
+            if (i == 40)
+                text.toString(); // materialize prefix in the middle
+        }
+        for (int i = 0; i < expected.length(); i++)
+            assertEquals(expected.charAt(i), text.charAt(i), "at index " + i);
+        assertEquals(expected.toString(), text.toString());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void logged_conversations_can_be_browsed_after_reopening() {
+        var file = directory.resolve("conversations.log");
+        var log = new ConversationLog(file);
+        long first = ConversationLog.newConversationId(), second = ConversationLog.newConversationId();
+        log.append(first, "GPT_3_5", new ChatMessage("user", "What for can I use atomics in Java?"), 12);
+        log.append(first, "GPT_3_5", new ChatMessage("assistant", "For lock-free counters, mostly."), 8);
+        log.append(second, "GPT_4", new ChatMessage("user", "Explain the LazyHolder pattern"), 9);
+        log.dispose();
+
+        var reopened = new ConversationLog(file);
+        var conversations = reopened.getConversations();
+        assertEquals(2, conversations.size());
+        assertEquals(second, conversations.get(0).id());
+        assertEquals("GPT_4", conversations.get(0).modelPage());
+        assertEquals("What for can I use atomics in Java?", conversations.get(1).title());
+        assertEquals(2, conversations.get(1).messageCount());
+
+        var messages = reopened.readConversation(first);
+        assertEquals(List.of("What for can I use atomics in Java?", "For lock-free counters, mostly."),
+                messages.stream().map(message -> message.message().getContent()).toList());
+        assertEquals("assistant", messages.get(1).message().getRole());
+        assertEquals(8, messages.get(1).tokenCount());
+        reopened.dispose();
+    }
+
+    @Test
+    void messages_appended_after_loading_are_indexed() {
+        var log = new ConversationLog(directory.resolve("conversations.log"));
+        assertEquals(List.of(), log.getConversations());
+
+        long id = ConversationLog.newConversationId();
+        log.append(id, "GPT_3_5", new ChatMessage("user", "Q".repeat(200)), 50);
+        var conversation = log.getConversations().get(0);
+        assertEquals(1, conversation.messageCount());
+        assertEquals(80, conversation.title().length());
+        assertEquals("Q".repeat(200), log.readConversation(id).get(0).message().getContent());
+        log.dispose();
+    }
+
+    @Test
+    void incomplete_tail_of_log_is_dropped() throws IOException {
+        var file = directory.resolve("conversations.log");
+        var log = new ConversationLog(file);
+        long id = ConversationLog.newConversationId();
+        log.append(id, "GPT_3_5", new ChatMessage("user", "First"), 1);
+        log.append(id, "GPT_3_5", new ChatMessage("assistant", "Second"), 1);
+        log.dispose();
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        var reopened = new ConversationLog(file);
+        assertEquals(1, reopened.readConversation(id).size());
+        reopened.append(id, "GPT_3_5", new ChatMessage("assistant", "Third"), 1);
+        reopened.dispose();
+
+        var messages = new ConversationLog(file).readConversation(id);
+        assertEquals(List.of("First", "Third"), messages.stream().map(message -> message.message().getContent()).toList());
+    }
+
+    @Test
+    void messages_appended_after_crash_follow_repaired_log() throws IOException {
+        var file = directory.resolve("conversations.log");
+        var log = new ConversationLog(file);
+        long id = ConversationLog.newConversationId();
+        log.append(id, "GPT_3_5", new ChatMessage("user", "First"), 1);
+        log.append(id, "GPT_3_5", new ChatMessage("assistant", "Second"), 1);
+        log.dispose();
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // the new session appends without browsing the history first
+        var reopened = new ConversationLog(file);
+        long nextId = ConversationLog.newConversationId();
+        reopened.append(nextId, "GPT_3_5", new ChatMessage("user", "Third"), 1);
+        reopened.dispose();
+
+        var rereopened = new ConversationLog(file);
+        assertEquals(List.of("First"), rereopened.readConversation(id).stream().map(message -> message.message().getContent()).toList());
+        assertEquals(List.of("Third"), rereopened.readConversation(nextId).stream().map(message -> message.message().getContent()).toList());
+        rereopened.dispose();
+    }
+
+    @Test
+    void record_with_corrupt_string_length_is_dropped_with_rest_of_log() throws IOException {
+        var file = directory.resolve("conversations.log");
+        var log = new ConversationLog(file);
+        long id = ConversationLog.newConversationId();
+        log.append(id, "GPT_3_5", new ChatMessage("user", "First"), 1);
+        log.getConversations();
+        long size = Files.size(file);
+        log.append(id, "GPT_3_5", new ChatMessage("assistant", "Second"), 1);
+        log.dispose();
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // the role length of the second message, past its header and token count
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), size + 21 + 4);
+        }
+
+        var reopened = new ConversationLog(file);
+        assertEquals(List.of("First"), reopened.readConversation(id).stream().map(message -> message.message().getContent()).toList());
+        reopened.append(id, "GPT_3_5", new ChatMessage("assistant", "Third"), 1);
+        reopened.dispose();
+
+        var messages = new ConversationLog(file).readConversation(id);
+        assertEquals(List.of("First", "Third"), messages.stream().map(message -> message.message().getContent()).toList());
+    }
+}
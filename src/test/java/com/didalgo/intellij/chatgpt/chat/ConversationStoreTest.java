@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.gpt3.ModelType;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationStoreTest {
+
+    final AtomicInteger countedMessages = new AtomicInteger();
+    final ConversationStore store = new ConversationStore((model, message) -> {
+        countedMessages.incrementAndGet();
+        return message.getContent().length();
+    });
+
+    @Test
+    void messages_of_same_role_replace_or_merge_with_last_message() {
+        store.add(new ChatMessage("system", "Be brief."));
+        store.add(new ChatMessage("system", " Be nice."));
+        store.add(new ChatMessage("user", "First question"));
+        store.add(new ChatMessage("user", "Second question"));
+        store.add(new ChatMessage(null, "!"));
+
+        assertEquals(List.of("Be brief. Be nice.", "Second question!"), contentsOf(store.snapshot()));
+        assertEquals("user", store.snapshot().get(1).getRole());
+    }
+
+    @Test
+    void snapshot_is_unaffected_by_later_changes() {
+        store.add(new ChatMessage("user", "Question"));
+        var snapshot = store.snapshot();
+        store.add(new ChatMessage("assistant", "Answer"));
+        store.add(new ChatMessage("assistant", "Better answer"));
+        store.clear();
+
+        assertEquals(List.of("Question"), contentsOf(snapshot));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void oldest_messages_are_removed_across_buffer_wraparound() {
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 12; i++)
+                store.add(new ChatMessage((i % 2 == 0)? "user" : "assistant", "Message " + round + "." + i));
+            assertEquals(10, store.removeOldest(store.snapshot(), 10));
+        }
+
+        assertEquals(20, store.size());
+        var snapshot = store.snapshot();
+        assertEquals("Message 8.4", snapshot.get(0).getContent());
+        assertEquals("Message 9.11", snapshot.get(19).getContent());
+    }
+
+    @Test
+    void oldest_messages_removed_since_snapshot_are_not_removed_again() {
+        store.add(new ChatMessage("user", "Question"));
+        store.add(new ChatMessage("assistant", "Answer"));
+        var snapshot = store.snapshot();
+        store.replaceAll(List.of(new ChatMessage("user", "Other question")));
+
+        assertEquals(0, store.removeOldest(snapshot, 1));
+        assertEquals(List.of("Other question"), contentsOf(store.snapshot()));
+    }
+
+    @Test
+    void token_counts_are_cached_per_message_and_model() {
+        store.add(new ChatMessage("user", "Question"));
+        store.add(new ChatMessage("assistant", "Answer"));
+
+        assertEquals(8, store.snapshot().getTokenCount(0, ModelType.GPT_3_5_TURBO));
+        assertEquals(6, store.snapshot().getTokenCount(1, ModelType.GPT_3_5_TURBO));
+        assertEquals(8, store.snapshot().getTokenCount(0, ModelType.GPT_3_5_TURBO));
+        assertEquals(2, countedMessages.get());
+
+        store.snapshot().getTokenCount(0, ModelType.GPT_4);
+        assertEquals(3, countedMessages.get());
+    }
+
+    private static List<String> contentsOf(List<ChatMessage> messages) {
+        return messages.stream().map(ChatMessage::getContent).toList();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBudgetPolicyTest {
+
+    @Test
+    void default_policy_leaves_two_thirds_of_context_for_prompt() {
+        for (int maxTokens = 0; maxTokens <= 40_000; maxTokens++)
+            assertEquals(maxTokens*2/3, TokenBudgetPolicy.DEFAULT.getPromptTokenLimit(maxTokens), "with maxTokens " + maxTokens);
+    }
+
+    @Test
+    void default_policy_lets_response_to_short_prompt_take_rest_of_context() {
+        int maxResponseTokens = TokenBudgetPolicy.DEFAULT.getMaxResponseTokens(4096, 100);
+
+        assertEquals(4096 - 100 - TokenBudgetPolicy.RESPONSE_TOKEN_SAFETY_MARGIN, maxResponseTokens);
+        assertTrue(maxResponseTokens > TokenBudgetPolicy.DEFAULT.getResponseTokenReserve(4096));
+        assertEquals(1, TokenBudgetPolicy.DEFAULT.getMaxResponseTokens(4096, 4096));
+    }
+
+    @Test
+    void fixed_policy_limits_response_to_reserve() {
+        var policy = TokenBudgetPolicy.fixed(1000);
+        assertEquals(1000, policy.getMaxResponseTokens(4096, 100));
+        assertEquals(4096 - 3500 - TokenBudgetPolicy.RESPONSE_TOKEN_SAFETY_MARGIN, policy.getMaxResponseTokens(4096, 3500));
+    }
+
+    @Test
+    void fixed_policy_reserves_given_tokens_within_context() {
+        var policy = TokenBudgetPolicy.fixed(1000);
+        assertEquals(3096, policy.getPromptTokenLimit(4096));
+        assertEquals(0, policy.getPromptTokenLimit(500));
+    }
+
+    @Test
+    void adaptive_policy_follows_longest_recent_response() {
+        var history = new ResponseLengthHistory(2);
+        var policy = TokenBudgetPolicy.adaptive(history, 256);
+        assertEquals(TokenBudgetPolicy.DEFAULT.getResponseTokenReserve(8192), policy.getResponseTokenReserve(8192));
+
+        history.record(100);
+        assertEquals(256, policy.getResponseTokenReserve(8192));
+        history.record(800);
+        assertEquals(1000, policy.getResponseTokenReserve(8192));
+        assertEquals(512, policy.getResponseTokenReserve(1024));
+        history.record(300);
+        history.record(400);
+        assertEquals(500, policy.getResponseTokenReserve(8192));
+    }
+
+    @Test
+    void adaptive_policy_limits_response_only_once_responses_are_observed() {
+        var history = new ResponseLengthHistory(2);
+        var policy = TokenBudgetPolicy.adaptive(history, 256);
+        assertEquals(TokenBudgetPolicy.DEFAULT.getMaxResponseTokens(8192, 100), policy.getMaxResponseTokens(8192, 100));
+
+        history.record(800);
+        assertEquals(1000, policy.getMaxResponseTokens(8192, 100));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void reserve_never_delays_without_limits() {
+        var limiter = new RateLimiter();
+        for (int i = 0; i < 1000; i++)
+            assertEquals(0, limiter.reserve(100_000, 0));
+    }
+
+    @Test
+    void reserve_queues_requests_exceeding_requests_per_minute() {
+        var limiter = new RateLimiter();
+        limiter.setLimits(3, 0, 0);
+        assertEquals(0, limiter.reserve(10, 0));
+        assertEquals(0, limiter.reserve(10, 0));
+        assertEquals(0, limiter.reserve(10, 0));
+        assertEquals(20 * SECOND, limiter.reserve(10, 0));
+        assertEquals(40 * SECOND, limiter.reserve(10, 0));
+        assertEquals(10 * SECOND, limiter.reserve(10, 50 * SECOND));
+    }
+
+    @Test
+    void reserve_delays_until_enough_tokens_are_refilled() {
+        var limiter = new RateLimiter();
+        limiter.setLimits(0, 6000, 0);
+        assertEquals(0, limiter.reserve(5000, 0));
+        assertEquals(30 * SECOND, limiter.reserve(4000, 0));
+        // oversized requests wait for the full bucket only
+        limiter.setRemaining(-1, 6000, 120 * SECOND);
+        assertEquals(0, limiter.reserve(10_000, 120 * SECOND));
+        assertEquals(60 * SECOND, limiter.reserve(10_000, 120 * SECOND));
+    }
+
+    @Test
+    void setRemaining_lowers_available_capacity() {
+        var limiter = new RateLimiter();
+        limiter.setLimits(60, 0, 0);
+        limiter.setRemaining(0, -1, 0);
+        assertEquals(SECOND, limiter.reserve(1, 0));
+    }
+}
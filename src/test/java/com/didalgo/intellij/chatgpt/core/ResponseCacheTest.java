@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void key_depends_on_endpoint_and_all_response_affecting_parameters() {
+        var request = request("Explain this code", 0.0);
+        assertEquals(keyOf(request), keyOf(request("Explain this code", 0.0)));
+        assertNotEquals(keyOf(request), keyOf(request("Explain this code!", 0.0)));
+        assertNotEquals(keyOf(request), keyOf(request("Explain this code", 0.5)));
+        assertNotEquals(keyOf(request), ResponseCache.keyOf("https://example.openai.azure.com/", request));
+
+        var penalized = request("Explain this code", 0.0);
+        penalized.setPresencePenalty(0.5);
+        assertNotEquals(keyOf(request), keyOf(penalized));
+        penalized = request("Explain this code", 0.0);
+        penalized.setFrequencyPenalty(0.5);
+        assertNotEquals(keyOf(request), keyOf(penalized));
+
+        request.setModel("gpt-4");
+        assertNotEquals(keyOf(request), keyOf(request("Explain this code", 0.0)));
+    }
+
+    @Test
+    void key_doesnt_depend_on_max_tokens_varied_by_token_budget_policy() {
+        var request = request("Explain this code", 0.0);
+        var limited = request("Explain this code", 0.0);
+        limited.setMaxTokens(1234);
+
+        assertEquals(keyOf(request), keyOf(limited));
+    }
+
+    @Test
+    void only_deterministic_requests_are_cacheable_by_default() {
+        assertTrue(ResponseCache.isCacheable(request("Explain", 0.0), false));
+        assertFalse(ResponseCache.isCacheable(request("Explain", 0.4), false));
+        assertTrue(ResponseCache.isCacheable(request("Explain", 0.4), true));
+    }
+
+    @Test
+    void stored_responses_survive_reopening() {
+        var cache = new ResponseCache(directory, 1024, 10);
+        assertEquals(Optional.empty(), cache.get("a"));
+        cache.put("a", "Response A");
+        assertEquals(Optional.of("Response A"), cache.get("a"));
+
+        var reopened = new ResponseCache(directory, 1024, 10);
+        assertEquals(Optional.of("Response A"), reopened.get("a"));
+    }
+
+    @Test
+    void least_recently_used_responses_are_evicted() {
+        var cache = new ResponseCache(directory, 1024, 2);
+        cache.put("a", "Response A");
+        cache.put("b", "Response B");
+        cache.get("a");
+        cache.put("c", "Response C");
+
+        assertEquals(Optional.of("Response A"), cache.get("a"));
+        assertEquals(Optional.empty(), cache.get("b"));
+        assertEquals(Optional.of("Response C"), cache.get("c"));
+    }
+
+    @Test
+    void responses_are_evicted_above_size_limit() {
+        var cache = new ResponseCache(directory, 25, 10);
+        cache.put("a", "Response A");
+        cache.put("b", "Response B");
+        cache.put("c", "Response C");
+
+        assertEquals(Optional.empty(), cache.get("a"));
+        assertEquals(Optional.of("Response B"), cache.get("b"));
+        assertEquals(Optional.of("Response C"), cache.get("c"));
+    }
+
+    private static String keyOf(ChatCompletionRequest request) {
+        return ResponseCache.keyOf("https://api.openai.com/", request);
+    }
+
+    private static ChatCompletionRequest request(String prompt, double temperature) {
+        return ChatCompletionRequest.builder()
+                .model("gpt-3.5-turbo")
+                .messages(List.of(new ChatMessage("system", "You are a professional software engineer."), new ChatMessage("user", prompt)))
+                .temperature(temperature)
+                .build();
+    }
+}
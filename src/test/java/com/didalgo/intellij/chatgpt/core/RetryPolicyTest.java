@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.TestScheduler;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    final TestScheduler scheduler = new TestScheduler();
+    final RetryPolicy policy = new RetryPolicy(2, Duration.ofSeconds(1), Duration.ofSeconds(20), Duration.ZERO);
+
+    @Test
+    void apply_retries_transient_failure_after_delay_requested_by_server() {
+        var subscriptions = new AtomicInteger();
+        var subscriber = policy.apply(() -> subscriptions.incrementAndGet() == 1
+                ? Flowable.<String>error(httpException(429, Headers.of("Retry-After", "5")))
+                : Flowable.just("answer"), scheduler).test();
+
+        scheduler.advanceTimeBy(4, TimeUnit.SECONDS);
+        subscriber.assertNoValues();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        subscriber.assertValues("answer").assertComplete();
+        assertEquals(2, subscriptions.get());
+    }
+
+    @Test
+    void apply_does_not_retry_after_response_started_arriving() {
+        var subscriptions = new AtomicInteger();
+        var subscriber = policy.apply(() -> {
+            subscriptions.incrementAndGet();
+            return Flowable.just("partial").concatWith(Flowable.error(httpException(500, Headers.of())));
+        }, scheduler).test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        subscriber.assertValues("partial").assertError(HttpException.class);
+        assertEquals(1, subscriptions.get());
+    }
+
+    @Test
+    void apply_does_not_retry_client_errors_and_gives_up_after_max_retries() {
+        var subscriptions = new AtomicInteger();
+        policy.apply(() -> {
+            subscriptions.incrementAndGet();
+            return Flowable.<String>error(httpException(400, Headers.of()));
+        }, scheduler).test().assertError(HttpException.class);
+        assertEquals(1, subscriptions.get());
+
+        subscriptions.set(0);
+        var subscriber = policy.apply(() -> {
+            subscriptions.incrementAndGet();
+            return Flowable.<String>error(httpException(503, Headers.of()));
+        }, scheduler).test();
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        subscriber.assertError(HttpException.class);
+        assertEquals(3, subscriptions.get());
+    }
+
+    @Test
+    void apply_takes_response_from_hedged_request_when_primary_is_slow() {
+        var hedging = new RetryPolicy(0, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(2));
+        var subscriptions = new AtomicInteger();
+        var subscriber = hedging.apply(() -> subscriptions.incrementAndGet() == 1
+                ? Flowable.just("slow").delay(10, TimeUnit.SECONDS, scheduler)
+                : Flowable.just("fast").delay(1, TimeUnit.SECONDS, scheduler), scheduler).test();
+
+        scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+        subscriber.assertValues("fast").assertComplete();
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        subscriber.assertValues("fast");
+    }
+
+    @Test
+    void parseRetryAfter_supports_seconds_milliseconds_and_missing_header() {
+        assertEquals(Optional.of(Duration.ofSeconds(7)), RetryPolicy.parseRetryAfter(Headers.of("Retry-After", "7")));
+        assertEquals(Optional.of(Duration.ofMillis(250)), RetryPolicy.parseRetryAfter(Headers.of("retry-after-ms", "250", "Retry-After", "1")));
+        assertEquals(Optional.empty(), RetryPolicy.parseRetryAfter(Headers.of()));
+        assertEquals(Optional.of(Duration.ofSeconds(5)), policy.getBackoff(0, httpException(429, Headers.of("Retry-After", "5"))));
+    }
+
+    @Test
+    void apply_gives_up_when_server_requests_delay_longer_than_max_backoff() {
+        var subscriptions = new AtomicInteger();
+        var subscriber = policy.apply(() -> {
+            subscriptions.incrementAndGet();
+            return Flowable.<String>error(httpException(429, Headers.of("Retry-After", "60")));
+        }, scheduler).test();
+
+        subscriber.assertError(HttpException.class);
+        assertEquals(1, subscriptions.get());
+        assertEquals(Optional.empty(), policy.getBackoff(0, httpException(429, Headers.of("Retry-After", "60"))));
+    }
+
+    private static HttpException httpException(int code, Headers headers) {
+        var body = ResponseBody.create("{}", MediaType.get("application/json"));
+        var rawResponse = new okhttp3.Response.Builder()
+                .request(new okhttp3.Request.Builder().url("https://api.openai.com/v1/chat/completions").build())
+                .protocol(okhttp3.Protocol.HTTP_1_1)
+                .code(code)
+                .message("Error")
+                .headers(headers)
+                .build();
+        return new HttpException(Response.error(body, rawResponse));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import com.didalgo.gpt3.ModelType;
+import com.didalgo.gpt3.TokenCount;
+import com.didalgo.intellij.chatgpt.chat.ChatMessageUtils;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCountCacheTest {
+
+    final ModelType model = ModelType.GPT_3_5_TURBO;
+
+    @Test
+    void countTokens_gives_same_counts_as_tokenizer_and_counts_each_text_once() {
+        var cache = new TokenCountCache(10);
+        String text = "Hello, world! How are you?";
+        var message = new ChatMessage(ChatMessageRole.USER.value(), text);
+
+        assertEquals(TokenCount.fromString(text, model.getTokenizer()), cache.countTokens(model, text));
+        assertEquals(TokenCount.fromString(text, model.getTokenizer()), cache.countTokens(model, new StringBuilder(text)));
+        int messageTokens = ChatMessageUtils.countTokens(message, model.getTokenizer(), model.getChatFormatDescriptor());
+        assertEquals(messageTokens, cache.countTokens(model, message));
+        assertEquals(messageTokens, cache.countTokens(model, new ChatMessage(ChatMessageRole.USER.value(), text)));
+
+        var statistics = cache.getStatistics();
+        assertEquals(2, statistics.missCount());
+        assertEquals(2, statistics.hitCount());
+        assertEquals(2, statistics.size());
+    }
+
+    @Test
+    void countTokens_evicts_least_recently_used_entries() {
+        var cache = new TokenCountCache(2);
+        cache.countTokens(model, "first");
+        cache.countTokens(model, "second");
+        cache.countTokens(model, "first");
+        cache.countTokens(model, "third");
+        cache.countTokens(model, "first");
+
+        var statistics = cache.getStatistics();
+        assertEquals(1, statistics.evictionCount());
+        assertEquals(2, statistics.hitCount());
+        assertEquals(2, statistics.size());
+    }
+}
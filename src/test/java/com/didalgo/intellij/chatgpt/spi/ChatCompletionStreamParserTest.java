@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.spi;
+
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatCompletionStreamParserTest {
+
+    final ChatCompletionStreamParser parser = new ChatCompletionStreamParser();
+
+    @Test
+    void parse_extracts_choice_deltas_and_stops_at_done() throws IOException {
+        var stream = """
+                : keep-alive comment
+                data: {"id":"chatcmpl-1","object":"chat.completion.chunk","choices":[{"index":0,"delta":{"role":"assistant"},"finish_reason":null}]}
+
+                data: {"id":"chatcmpl-1","choices":[],"prompt_filter_results":[{"prompt_index":0,"content_filter_results":{"hate":{"filtered":false}}}]}
+
+                data: {"id":"chatcmpl-1","choices":[{"index":0,"delta":{"content":"Hello,\\n \\"w\\u00f6rld\\""},"logprobs":null,"finish_reason":null}]}
+
+                data:{"choices":[{"delta":{"content":"!"},"index":1},{"index":0,"delta":{"content":null}}]}
+
+                data: {"choices":[{"index":0,"delta":{},"finish_reason":"stop"}]}
+
+                data: [DONE]
+
+                data: {"choices":[{"index":0,"delta":{"content":"ignored"}}]}
+                """;
+        var events = new ArrayList<List<ChatCompletionDelta>>();
+        parser.parse(new Buffer().writeUtf8(stream), events::add);
+
+        assertEquals(List.of(
+                List.of(new ChatCompletionDelta(0, "")),
+                List.of(new ChatCompletionDelta(0, "Hello,\n \"wörld\"")),
+                List.of(new ChatCompletionDelta(1, "!"), new ChatCompletionDelta(0, "")),
+                List.of(new ChatCompletionDelta(0, ""))
+        ), events);
+    }
+
+    @Test
+    void parse_fails_on_error_event() {
+        var stream = """
+                data: {"error":{"message":"The server had an error","type":"server_error","param":null,"code":null}}
+                """;
+        var e = assertThrows(IOException.class, () -> parser.parse(new Buffer().writeUtf8(stream), __ -> { }));
+        assertTrue(e.getMessage().contains("The server had an error"), e.getMessage());
+    }
+}
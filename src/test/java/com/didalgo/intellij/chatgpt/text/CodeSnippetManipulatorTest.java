@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeSnippetManipulatorTest {
+
+    @Test
+    void snippet_with_title_and_fenced_blocks_becomes_collapsible() {
+        String input = "Explain this:<br>[Selected code from src/main/java/Foo.java]<br>```java\nclass Foo { }\n```\n```\nmore\n```<br> \nThanks";
+
+        assertEquals("Explain this:<br><div class=\"collapsible\" ai-code-snippet title=\"Selected code ... Foo.java\">\n"
+                + "[Selected code from src/main/java/Foo.java]<br>```java\nclass Foo { }\n```\n```\nmore\n```\n</div>Thanks",
+                CodeSnippetManipulator.makeCodeSnippetBlocksCollapsible(input));
+    }
+
+    @Test
+    void text_without_snippets_is_unchanged() {
+        String input = "[link] without code, ``` unclosed fence and [another] one";
+
+        assertSame(input, CodeSnippetManipulator.makeCodeSnippetBlocksCollapsible(input));
+    }
+
+    @Test
+    void scanner_agrees_with_regular_expression_on_random_inputs() {
+        String[] tokens = { "[", "]", "`", "```", "````", " ", "\n", "\t", "<br>", "a", "b c", "/", "\\", "$", "\r\n", "\u2028" };
+        var random = new Random(20230601);
+        for (int i = 0; i < 100_000; i++) {
+            var input = new StringBuilder();
+            int tokenCount = random.nextInt(40);
+            for (int k = 0; k < tokenCount; k++)
+                input.append(tokens[random.nextInt(tokens.length)]);
+
+            String text = input.toString();
+            assertEquals(makeCollapsibleByRegex(text), CodeSnippetManipulator.makeCodeSnippetBlocksCollapsible(text), text);
+        }
+    }
+
+    @Test
+    void large_input_is_processed_in_linear_time() {
+        String input = "[a]```".repeat(50_000) + "``".repeat(50_000);
+
+        assertTimeout(Duration.ofSeconds(5), () -> CodeSnippetManipulator.makeCodeSnippetBlocksCollapsible(input));
+    }
+
+    /** The regular expression based implementation the scanner replaced, kept as a reference. */
+    private static String makeCollapsibleByRegex(String input) {
+        Pattern snippetPattern = Pattern.compile("(\\[(.*?)](?:<br>)?(?:\\s*(`{3,}).*?\\3)+)(?:<br>|\\s)*", Pattern.DOTALL);
+        Pattern lastPathPattern = Pattern.compile(".*[\\\\/](.*)$");
+        Matcher matcher = snippetPattern.matcher(input);
+        StringBuilder sb = new StringBuilder();
+
+        while (matcher.find()) {
+            String fullMatch = matcher.group(1);
+            String title = matcher.group(2);
+
+            String[] words = title.split("\\s+");
+            String shortenedTitle = (words.length > 2 ? words[0] + " " + words[1] + " ... " : title);
+            Matcher pathMatcher = lastPathPattern.matcher(title);
+            if (pathMatcher.matches())
+                shortenedTitle += pathMatcher.group(1);
+
+            matcher.appendReplacement(sb, Matcher.quoteReplacement("<div class=\"collapsible\" ai-code-snippet title=\"" + shortenedTitle + "\">\n" + fullMatch + "\n</div>"));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
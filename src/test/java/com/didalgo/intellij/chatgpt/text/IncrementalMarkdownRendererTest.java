@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalMarkdownRendererTest {
+
+    static final String MARKDOWN = """
+            # Heading with <tags> & entities
+
+            Some paragraph text
+            continued on the next line with `inline <code>`.
+
+            ```java
+            class Foo {
+                List<String> list = new ArrayList<>(); // a && b
+            }
+            ```
+
+            1. first
+            2. second
+
+               nested paragraph
+
+            - bullet
+            - another
+
+            | Col A | Col B |
+            |-------|-------|
+            | a < b | c & d |
+
+            > quoted
+            lazy continuation
+
+            Setext heading
+            --------------
+
+                indented code
+
+            Final paragraph.
+            """;
+
+    TextFragmentToHtmlFormatter formatter = new TextFragmentToHtmlFormatter();
+
+    @Test
+    void render_gives_same_html_as_full_rendering_for_every_streamed_prefix() {
+        var renderer = new IncrementalMarkdownRenderer(formatter);
+        for (int end = 0; end <= MARKDOWN.length(); end++) {
+            String prefix = MARKDOWN.substring(0, end);
+            assertEquals(formatter.format(TextFragment.of(prefix)), renderer.render(prefix).toHtml(), "at prefix length " + end);
+        }
+        assertTrue(renderer.getFrozenBlockCount() > 5, "Blocks should get frozen");
+    }
+
+    @Test
+    void append_gives_same_html_as_full_rendering_for_every_streamed_chunk() {
+        var renderer = new IncrementalMarkdownRenderer(formatter);
+        for (int start = 0, end; start < MARKDOWN.length(); start = end) {
+            end = Math.min(MARKDOWN.length(), start + 1 + start % 7);
+            var prefix = new StringBuilder(MARKDOWN.substring(0, end));
+            var fragment = renderer.append(prefix, MARKDOWN.substring(start, end));
+
+            assertEquals(formatter.format(TextFragment.of(prefix.toString())), fragment.toHtml(), "at prefix length " + end);
+            assertEquals(prefix.toString(), fragment.markdown());
+        }
+        assertTrue(renderer.getFrozenBlockCount() > 5, "Blocks should get frozen");
+    }
+
+    @Test
+    void append_gives_same_html_as_full_rendering_for_lists_and_quotes_streamed_by_character() {
+        String markdown = """
+                1. a
+
+                2. b
+
+                - tight
+                - list
+
+                - turned loose
+
+                > quote
+                --
+
+                > another quote
+
+                paragraph
+                ***not a break
+
+                1) c
+
+                12) d
+
+                Final paragraph.
+                """;
+        var renderer = new IncrementalMarkdownRenderer(formatter);
+        for (int end = 1; end <= markdown.length(); end++) {
+            var prefix = markdown.substring(0, end);
+            var fragment = renderer.append(prefix, markdown.substring(end - 1, end));
+
+            assertEquals(formatter.format(TextFragment.of(prefix)), fragment.toHtml(), "at prefix length " + end);
+        }
+        assertTrue(renderer.getFrozenBlockCount() > 3, "Blocks should get frozen");
+    }
+
+    @Test
+    void render_keeps_frozen_blocks_identical_between_updates() {
+        var renderer = new IncrementalMarkdownRenderer(formatter);
+        renderer.render("First paragraph.\n\nSecond");
+        String frozen = renderer.getBlocks().get(0);
+        renderer.render("First paragraph.\n\nSecond paragraph.");
+
+        assertSame(frozen, renderer.getBlocks().get(0));
+        assertEquals(2, renderer.getBlocks().size());
+    }
+
+    @Test
+    void render_starts_over_when_text_is_not_continued() {
+        var renderer = new IncrementalMarkdownRenderer(formatter);
+        renderer.render("First paragraph.\n\nSecond paragraph.");
+        var fragment = renderer.render("Other paragraph.\n\nSecond paragraph.");
+
+        assertEquals("<p>Other paragraph.</p>\n<p>Second paragraph.</p>\n", fragment.toHtml());
+    }
+
+    @Test
+    void render_doesnt_freeze_blocks_when_reference_definitions_are_present() {
+        var renderer = new IncrementalMarkdownRenderer(formatter);
+        String markdown = "See [link][ref].\n\n[ref]: https://example.com\n\nMore";
+        for (int end = 0; end <= markdown.length(); end++) {
+            String prefix = markdown.substring(0, end);
+            assertEquals(formatter.format(TextFragment.of(prefix)), renderer.render(prefix).toHtml(), "at prefix length " + end);
+        }
+    }
+}
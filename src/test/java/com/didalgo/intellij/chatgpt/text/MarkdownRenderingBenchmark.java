@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of rendering streamed responses of several conversations concurrently,
+ * each rendered incrementally, as the chunks arrive, by its own {@link IncrementalMarkdownRenderer}
+ * sharing the formatter.
+ * <p>
+ * Not run with the tests, run manually with the optional arguments: the maximum number of concurrent
+ * conversations (default 8) and the measurement time per thread count in seconds (default 5).
+ */
+public class MarkdownRenderingBenchmark {
+
+    private static final int CHUNK_LENGTH = 5;
+
+    public static void main(String[] args) throws Exception {
+        int maxConversations = (args.length > 0)? Integer.parseInt(args[0]) : 8;
+        long measurementNanos = TimeUnit.SECONDS.toNanos((args.length > 1)? Long.parseLong(args[1]) : 5);
+        String response = IncrementalMarkdownRendererTest.MARKDOWN.repeat(4);
+        var formatter = new TextFragmentToHtmlFormatter();
+
+        // warm up
+        run(formatter, response, maxConversations, measurementNanos / 2);
+
+        System.out.printf("%-14s %16s %18s%n", "conversations", "responses/s", "chunk renders/s");
+        for (int conversations = 1; conversations <= maxConversations; conversations *= 2) {
+            long responses = run(formatter, response, conversations, measurementNanos);
+            double seconds = measurementNanos / 1e9;
+            System.out.printf("%-14d %16.1f %18.0f%n", conversations, responses / seconds,
+                    responses * chunkCount(response) / seconds);
+        }
+    }
+
+    private static long run(TextFragmentToHtmlFormatter formatter, String response, int conversations, long durationNanos) throws Exception {
+        var executor = Executors.newFixedThreadPool(conversations);
+        try {
+            long deadline = System.nanoTime() + durationNanos;
+            var results = new ArrayList<Future<Long>>();
+            for (int i = 0; i < conversations; i++)
+                results.add(executor.submit(streamResponses(formatter, response, deadline)));
+
+            long responses = 0;
+            for (var result : results)
+                responses += result.get();
+            return responses;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Callable<Long> streamResponses(TextFragmentToHtmlFormatter formatter, String response, long deadline) {
+        return () -> {
+            var renderer = new IncrementalMarkdownRenderer(formatter);
+            long responses = 0;
+            while (System.nanoTime() < deadline) {
+                renderer.reset();
+                for (int end = CHUNK_LENGTH; end < response.length() + CHUNK_LENGTH; end += CHUNK_LENGTH)
+                    renderer.render(response.substring(0, Math.min(end, response.length())));
+                responses++;
+            }
+            return responses;
+        };
+    }
+
+    private static int chunkCount(String response) {
+        return (response.length() + CHUNK_LENGTH - 1) / CHUNK_LENGTH;
+    }
+}
@@ -2,6 +2,11 @@ package com.didalgo.intellij.chatgpt.text;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class TextFragmentToHtmlFormatterTest {
@@ -15,4 +20,53 @@ class TextFragmentToHtmlFormatterTest {
         String actualHtml = formatter.format(fragment);
         assertEquals(expectedHtml, actualHtml);
     }
-}
\ No newline at end of file
+
+    @Test
+    void format_shows_raw_html_and_entities_literally() {
+        TextFragment fragment = TextFragment.of("Text <b>bold</b> &copy; <!-- note -->\n<div>\n*em*\n</div>");
+        String expectedHtml = "<p>Text &lt;b&gt;bold&lt;/b&gt; &amp;copy; &lt;!-- note --&gt;<br>&lt;div&gt;<br><em>em</em><br>&lt;/div&gt;</p>\n";
+        assertEquals(expectedHtml, formatter.format(fragment));
+    }
+
+    @Test
+    void format_escapes_code_exactly_once() {
+        TextFragment fragment = TextFragment.of("Use `List<String>` &\n\n```java\nif (a && b) x = \"&lt;\";\n```\n");
+        String expectedHtml = "<p>Use <code>List&lt;String&gt;</code> &amp;</p>\n"
+                + "<pre><code class=\"language-java\">if (a &amp;&amp; b) x = &quot;&amp;lt;&quot;;\n</code></pre>\n";
+        assertEquals(expectedHtml, formatter.format(fragment));
+    }
+
+    @Test
+    void format_renders_blockquotes() {
+        TextFragment fragment = TextFragment.of("> quoted\n> text\n\nafter");
+        String expectedHtml = "<blockquote>\n<p>quoted<br>text</p>\n</blockquote>\n<p>after</p>\n";
+        assertEquals(expectedHtml, formatter.format(fragment));
+    }
+
+    @Test
+    void format_renders_autolinks() {
+        TextFragment fragment = TextFragment.of("See <https://example.com/?a=1&b=2>.");
+        String expectedHtml = "<p>See <a href=\"https://example.com/?a=1&amp;b=2\">https://example.com/?a=1&amp;b=2</a>.</p>\n";
+        assertEquals(expectedHtml, formatter.format(fragment));
+    }
+
+    @Test
+    void format_gives_same_html_when_rendering_concurrently() throws Exception {
+        var fragments = IntStream.range(0, 64)
+                .mapToObj(i -> TextFragment.of(IncrementalMarkdownRendererTest.MARKDOWN.repeat(1 + i % 4) + "\nAnswer " + i))
+                .toList();
+        var expected = fragments.stream().map(formatter::format).toList();
+
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var results = new ArrayList<Future<String>>();
+            for (int round = 0; round < 8; round++)
+                for (var fragment : fragments)
+                    results.add(executor.submit(() -> new TextFragmentToHtmlFormatter().format(fragment)));
+            for (int i = 0; i < results.size(); i++)
+                assertEquals(expected.get(i % fragments.size()), results.get(i).get(), "for fragment " + i % fragments.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeightIndexTest {
+
+    @Test
+    void offsetOf_and_indexAt_are_consistent_with_plain_list_of_heights() {
+        var random = new Random(42);
+        var index = new HeightIndex();
+        List<Integer> heights = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int height = random.nextInt(50);
+            index.add(height);
+            heights.add(height);
+            if (i % 7 == 0) {
+                int changed = random.nextInt(heights.size());
+                heights.set(changed, random.nextInt(50));
+                index.set(changed, heights.get(changed));
+            }
+        }
+
+        int offset = 0;
+        for (int i = 0; i < heights.size(); i++) {
+            assertEquals(offset, index.offsetOf(i), "at index " + i);
+            if (heights.get(i) > 0) {
+                assertEquals(i, index.indexAt(offset), "at offset " + offset);
+                assertEquals(i, index.indexAt(offset + heights.get(i) - 1), "at offset " + offset);
+            }
+            offset += heights.get(i);
+        }
+        assertEquals(offset, index.totalHeight());
+        assertEquals(heights.size() - 1, index.indexAt(offset + 100));
+        assertEquals(0, index.indexAt(-5));
+    }
+
+    @Test
+    void clear_gives_empty_index() {
+        var index = new HeightIndex();
+        index.add(10);
+        index.add(20);
+        index.clear();
+
+        assertEquals(-1, index.indexAt(0));
+        assertEquals(0, index.totalHeight());
+        index.add(5);
+        assertEquals(5, index.totalHeight());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2023 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlBlocksTest {
+
+    @Test
+    void update_gives_same_document_as_full_reload_while_blocks_are_appended() throws Exception {
+        List<List<String>> updates = List.of(
+                List.of("<p>Thinking...</p>\n"),
+                List.of("<p>Hel</p>\n"),
+                List.of("<p>Hello</p>\n", "<pre><code>x\n</code></pre>\n"),
+                List.of("<p>Hello</p>\n", "<pre><code>x\ny\n</code></pre>\n"),
+                List.of("<p>Hello</p>\n", "<pre><code>x\ny\n</code></pre>\n", "<ul>\n<li>a</li>\n</ul>\n", "<p>b</p>\n"),
+                List.of("<p>Hello</p>\n", "<pre><code>x\ny\n</code></pre>\n", "<ul>\n<li>a</li>\n</ul>\n", "<p>b</p>\n", "<p>c</p>\n")
+        );
+        HTMLDocument document = load(updates.get(0));
+        for (int i = 1; i < updates.size(); i++) {
+            Element unchanged = body(document).getElement(0);
+            assertTrue(HtmlBlocks.update(document, updates.get(i - 1), updates.get(i)), "at update " + i);
+            assertEquals(describe(load(updates.get(i))), describe(document), "at update " + i);
+            if (updates.get(i - 1).get(0).equals(updates.get(i).get(0)))
+                assertSame(unchanged, body(document).getElement(0), "Leading block should be left intact");
+        }
+    }
+
+    @Test
+    void update_requests_full_reload_when_blocks_are_removed() throws Exception {
+        List<String> oldBlocks = List.of("<p>a</p>\n", "<p>b</p>\n", "<p>c</p>\n");
+        HTMLDocument document = load(oldBlocks);
+
+        assertFalse(HtmlBlocks.update(document, oldBlocks, List.of("<p>a</p>\n", "<p>c</p>\n")));
+        assertFalse(HtmlBlocks.update(document, oldBlocks, List.of("<p>x</p>\n", "<p>b</p>\n", "<p>c</p>\n")));
+        assertTrue(HtmlBlocks.update(document, oldBlocks, oldBlocks));
+    }
+
+    private static HTMLDocument load(List<String> blocks) throws IOException, BadLocationException {
+        var kit = new HTMLEditorKit();
+        var document = (HTMLDocument) kit.createDefaultDocument();
+        kit.read(new StringReader("<html><body>" + HtmlBlocks.wrap(blocks) + "</body></html>"), document, 0);
+        return document;
+    }
+
+    private static Element body(HTMLDocument document) {
+        return document.getElement(document.getDefaultRootElement(), StyleConstants.NameAttribute, HTML.Tag.BODY);
+    }
+
+    private static String describe(HTMLDocument document) throws BadLocationException {
+        var buf = new StringBuilder(document.getText(0, document.getLength()));
+        describe(body(document), buf);
+        return buf.toString();
+    }
+
+    private static void describe(Element element, StringBuilder buf) {
+        buf.append('<').append(element.getName()).append(' ')
+                .append(element.getStartOffset()).append('-').append(element.getEndOffset());
+        for (int i = 0; i < element.getElementCount(); i++)
+            describe(element.getElement(i), buf);
+        buf.append('>');
+    }
+}